@@ -22,6 +22,12 @@ import com.android.settings.dashboard.DashboardFragment;
 import com.android.settings.search.BaseSearchIndexProvider;
 import com.android.settingslib.search.SearchIndexable;
 
+import com.evolution.settings.preference.ConstraintCache;
+import com.evolution.settings.utils.OverlayTypefaceCache;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 @SearchIndexable
 public class EvolutionSettings extends DashboardFragment {
 
@@ -42,6 +48,13 @@ public class EvolutionSettings extends DashboardFragment {
         return TAG;
     }
 
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        ConstraintCache.get(getContext()).dump(prefix, writer);
+        OverlayTypefaceCache.get(getContext()).dump(prefix, writer);
+    }
+
     public static final BaseSearchIndexProvider SEARCH_INDEX_DATA_PROVIDER =
             new BaseSearchIndexProvider(R.xml.evolution_settings);
 }
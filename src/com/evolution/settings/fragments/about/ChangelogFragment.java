@@ -20,6 +20,8 @@ import android.annotation.Nullable;
 import android.app.Fragment;
 import android.content.res.Resources;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.graphics.Color;
 import android.graphics.Typeface;
 import android.text.Spannable;
@@ -39,9 +41,11 @@ import androidx.preference.PreferenceFragment;
 
 import com.android.settings.R;
 
+import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -49,10 +53,28 @@ import com.android.internal.logging.nano.MetricsProto;
 
 public class ChangelogFragment extends PreferenceFragment {
 
+    private static final String TAG = "ChangelogFragment";
+
     TextView textView;
 
     private static final String CHANGELOG_PATH = "/system/etc/Changelog.txt";
 
+    // Lines of the first chunk, about a screenful, and of the following ones
+    private static final int FIRST_CHUNK_LINES = 80;
+    private static final int CHUNK_LINES = 500;
+
+    private static final Pattern DATE = Pattern.compile("(={20}|\\d{4}-\\d{2}-\\d{2})");
+    private static final Pattern COMMIT = Pattern.compile("([a-f0-9]{7})");
+    private static final Pattern COMMITTER = Pattern.compile("\\[(\\D.*?)]");
+    private static final Pattern TITLE = Pattern.compile("^(\\s+[\\*]\\s.*)");
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // Bumped when the view goes away, so a pending load stops
+    private volatile int mGeneration;
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
             Bundle savedInstanceState) {
@@ -64,63 +86,92 @@ public class ChangelogFragment extends PreferenceFragment {
         super.onViewCreated(view, savedInstanceState);
 
         textView = view.findViewById(R.id.changelog_text);
+        // Editable, so chunks are appended without laying out the text again
+        textView.setText("", TextView.BufferType.EDITABLE);
 
-        InputStreamReader inputReader = null;
-        String text = null;
-        StringBuilder data = new StringBuilder();
+        Resources.Theme theme = getContext().getTheme();
+        TypedValue typedValue = new TypedValue();
+        theme.resolveAttribute(android.R.attr.colorAccent, typedValue, true);
+        final int color = getContext().getColor(typedValue.resourceId);
 
-        Pattern date = Pattern.compile("(={20}|\\d{4}-\\d{2}-\\d{2})");
-        Pattern commit = Pattern.compile("([a-f0-9]{7})");
-        Pattern committer = Pattern.compile("\\[(\\D.*?)]");
-        Pattern title = Pattern.compile("(\\R\\s+[\\*]\\s.*)");
+        final int generation = ++mGeneration;
+        sExecutor.execute(() -> load(generation, color));
+    }
 
-        try {
-            char tmp[] = new char[2048];
-            int numRead;
+    @Override
+    public void onDestroyView() {
+        mGeneration++;
+        mHandler.removeCallbacksAndMessages(null);
+        super.onDestroyView();
+    }
 
-            inputReader = new FileReader(CHANGELOG_PATH);
-            while ((numRead = inputReader.read(tmp)) >= 0) {
-                data.append(tmp, 0, numRead);
-            }
-//            text = data.toString();
-        } catch (IOException e) {
-//            text = getString(R.string.changelog_error);
-        } finally {
-            try {
-                if (inputReader != null) {
-                    inputReader.close();
+    /**
+     * Streams the changelog, highlighting it a chunk of lines at a time and
+     * handing each chunk to the main thread as soon as it is ready.
+     */
+    private void load(int generation, int color) {
+        final Matcher date = DATE.matcher("");
+        final Matcher commit = COMMIT.matcher("");
+        final Matcher committer = COMMITTER.matcher("");
+        final Matcher title = TITLE.matcher("");
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(CHANGELOG_PATH))) {
+            SpannableStringBuilder chunk = new SpannableStringBuilder();
+            int lines = 0;
+            int chunkLines = FIRST_CHUNK_LINES;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (generation != mGeneration) {
+                    return;
+                }
+                appendLine(chunk, line, color, date, commit, committer, title);
+                if (++lines == chunkLines) {
+                    post(generation, chunk);
+                    chunk = new SpannableStringBuilder();
+                    lines = 0;
+                    chunkLines = CHUNK_LINES;
                 }
-            } catch (IOException e) {
             }
+            if (chunk.length() > 0) {
+                post(generation, chunk);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read " + CHANGELOG_PATH, e);
         }
+    }
 
-        SpannableStringBuilder sb = new SpannableStringBuilder(data);
-        Resources.Theme theme = getContext().getTheme();
-        TypedValue typedValue = new TypedValue();
-        theme.resolveAttribute(android.R.attr.colorAccent, typedValue, true);
-        final int color = getContext().getColor(typedValue.resourceId);
+    private void post(int generation, CharSequence chunk) {
+        mHandler.post(() -> {
+            if (generation == mGeneration && textView != null) {
+                textView.append(chunk);
+            }
+        });
+    }
+
+    private static void appendLine(SpannableStringBuilder sb, String line, int color,
+            Matcher date, Matcher commit, Matcher committer, Matcher title) {
+        final int offset = sb.length();
+        sb.append(line).append('\n');
 
-        Matcher m = date.matcher(data);
+        Matcher m = date.reset(line);
         while (m.find()){
-            sb.setSpan(new ForegroundColorSpan(color), m.start(1), m.end(1), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
-            sb.setSpan(new StyleSpan(Typeface.BOLD), m.start(1), m.end(1), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
+            sb.setSpan(new ForegroundColorSpan(color), offset + m.start(1), offset + m.end(1), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
+            sb.setSpan(new StyleSpan(Typeface.BOLD), offset + m.start(1), offset + m.end(1), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
         }
-        m = commit.matcher(data);
+        m = commit.reset(line);
         while (m.find()){
-            sb.setSpan(new StyleSpan(Typeface.NORMAL), m.start(1), m.end(1), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
+            sb.setSpan(new StyleSpan(Typeface.NORMAL), offset + m.start(1), offset + m.end(1), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
         }
-        m = committer.matcher(data);
+        m = committer.reset(line);
         while (m.find()){
-            sb.setSpan(new ForegroundColorSpan(color), m.start(1), m.end(1), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
-            sb.setSpan(new StyleSpan(Typeface.NORMAL), m.start(1), m.end(1), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
+            sb.setSpan(new ForegroundColorSpan(color), offset + m.start(1), offset + m.end(1), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
+            sb.setSpan(new StyleSpan(Typeface.NORMAL), offset + m.start(1), offset + m.end(1), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
         }
-        m = title.matcher(data);
+        m = title.reset(line);
         while (m.find()){
-            sb.setSpan(new ForegroundColorSpan(color), m.start(1), m.end(1), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
-            sb.setSpan(new StyleSpan(Typeface.BOLD), m.start(1), m.end(1), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
+            sb.setSpan(new ForegroundColorSpan(color), offset + m.start(1), offset + m.end(1), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
+            sb.setSpan(new StyleSpan(Typeface.BOLD), offset + m.start(1), offset + m.end(1), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
         }
-
-        textView.setText(sb);
     }
 
     @Override
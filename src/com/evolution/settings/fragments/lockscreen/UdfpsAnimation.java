@@ -59,6 +59,10 @@ import com.android.settings.SettingsPreferenceFragment;
 import com.android.settings.search.BaseSearchIndexProvider;
 import com.android.settingslib.search.Indexable;
 
+import com.evolution.settings.utils.FrameSequencePlayer;
+import com.evolution.settings.utils.OverlayResourcesPool;
+import com.evolution.settings.utils.ResourceNameIndex;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -72,10 +76,15 @@ public class UdfpsAnimation extends SettingsPreferenceFragment {
     private String mPkg = "com.evolution.udfps.resources";
     private AnimationDrawable animation;
 
+    private OverlayResourcesPool.Handle mUdfpsResHandle;
     private Resources udfpsRes;
 
-    private String[] mAnims;
-    private String[] mAnimPreviews;
+    private static final String ANIMS_ARRAY = "udfps_animation_styles";
+    private static final String PREVIEWS_ARRAY = "udfps_animation_previews";
+
+    private String[] mAnims = new String[0];
+    private int[] mAnimIds = new int[0];
+    private int[] mAnimPreviewIds = new int[0];
     private String[] mTitles;
 
     private UdfpsAnimAdapter mUdfpsAnimAdapter;
@@ -90,18 +99,37 @@ public class UdfpsAnimation extends SettingsPreferenceFragment {
 
     private void loadResources() {
         try {
-            PackageManager pm = getActivity().getPackageManager();
-            udfpsRes = pm.getResourcesForApplication(mPkg);
+            mUdfpsResHandle = OverlayResourcesPool.get(getActivity()).acquire(mPkg);
+            udfpsRes = mUdfpsResHandle.getResources();
         } catch (PackageManager.NameNotFoundException e) {
             e.printStackTrace();
         }
 
-        mAnims = udfpsRes.getStringArray(udfpsRes.getIdentifier("udfps_animation_styles",
-                "array", mPkg));
-        mAnimPreviews = udfpsRes.getStringArray(udfpsRes.getIdentifier("udfps_animation_previews",
-                "array", mPkg));
-        mTitles = udfpsRes.getStringArray(udfpsRes.getIdentifier("udfps_animation_titles",
-                "array", mPkg));
+        mTitles = udfpsRes.getStringArray(
+                mUdfpsResHandle.getIdentifier("udfps_animation_titles", "array"));
+
+        // Resolve the drawable names off the UI thread, once per package version
+        ResourceNameIndex.load(getActivity(), mPkg, "drawable",
+                new String[] { ANIMS_ARRAY, PREVIEWS_ARRAY }, index -> {
+            if (index == null || mUdfpsResHandle == null) {
+                return;
+            }
+            mAnims = index.getNames(ANIMS_ARRAY);
+            mAnimIds = index.getIds(ANIMS_ARRAY);
+            mAnimPreviewIds = index.getIds(PREVIEWS_ARRAY);
+            if (mUdfpsAnimAdapter != null) {
+                mUdfpsAnimAdapter.notifyDataSetChanged();
+            }
+        });
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (mUdfpsResHandle != null) {
+            mUdfpsResHandle.close();
+            mUdfpsResHandle = null;
+        }
     }
 
     @Override
@@ -157,10 +185,11 @@ public class UdfpsAnimation extends SettingsPreferenceFragment {
 
             Glide.with(holder.image.getContext())
                     .load("")
-                    .placeholder(getDrawable(holder.image.getContext(), mAnimPreviews[position]))
+                    .placeholder(getDrawable(mAnimPreviewIds[position]))
                     .into(holder.image);
 
             holder.name.setText(mTitles[position]);
+            holder.player.stop();
 
             if (position == Settings.System.getInt(context.getContentResolver(),
                 Settings.System.UDFPS_ANIM_STYLE, 0)) {
@@ -177,10 +206,13 @@ public class UdfpsAnimation extends SettingsPreferenceFragment {
                     updateActivatedStatus(mSelectedAnim, false);
                     updateActivatedStatus(animName, true);
                     mSelectedAnim = animName;
-                    holder.image.setBackgroundDrawable(getDrawable(v.getContext(), mAnims[position]));
-                    animation = (AnimationDrawable) holder.image.getBackground();
-                    animation.setOneShot(true);
-                    animation.start();
+                    // Stream the frames, unless the animation can't be read that way
+                    if (!holder.player.start(mAnimIds[position])) {
+                        holder.image.setBackgroundDrawable(getDrawable(mAnimIds[position]));
+                        animation = (AnimationDrawable) holder.image.getBackground();
+                        animation.setOneShot(true);
+                        animation.start();
+                    }
                     Settings.System.putInt(getActivity().getContentResolver(),
                             Settings.System.UDFPS_ANIM_STYLE, position);
                 }
@@ -189,16 +221,18 @@ public class UdfpsAnimation extends SettingsPreferenceFragment {
 
         @Override
         public int getItemCount() {
-            return mAnims.length;
+            return Math.min(mAnimIds.length, mAnimPreviewIds.length);
         }
 
         public class UdfpsAnimViewHolder extends RecyclerView.ViewHolder {
             TextView name;
             ImageView image;
+            FrameSequencePlayer player;
             public UdfpsAnimViewHolder(View itemView) {
                 super(itemView);
                 name = (TextView) itemView.findViewById(R.id.option_label);
                 image = (ImageView) itemView.findViewById(R.id.option_thumbnail);
+                player = new FrameSequencePlayer(image, udfpsRes);
             }
         }
 
@@ -214,15 +248,10 @@ public class UdfpsAnimation extends SettingsPreferenceFragment {
         }
     }
 
-    public Drawable getDrawable(Context context, String drawableName) {
-        try {
-            PackageManager pm = context.getPackageManager();
-            Resources res = pm.getResourcesForApplication(mPkg);
-            return res.getDrawable(res.getIdentifier(drawableName, "drawable", mPkg));
-        }
-        catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
+    public Drawable getDrawable(int resId) {
+        if (mUdfpsResHandle == null || resId == 0) {
+            return null;
         }
-        return null;
+        return udfpsRes.getDrawable(resId);
     }
 }
@@ -53,8 +53,10 @@ import com.android.settings.search.BaseSearchIndexProvider;
 import com.android.settingslib.widget.FooterPreference;
 import com.android.settingslib.search.SearchIndexable;
 
+import com.evolution.settings.preference.AppIconLoader;
 import com.evolution.settings.preference.PackageListAdapter;
 import com.evolution.settings.preference.PackageListAdapter.PackageItem;
+import com.evolution.settings.utils.LabelCache;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -243,8 +245,8 @@ public class SensorBlockSettings extends SettingsPreferenceFragment implements
                 new Preference(getActivity());
 
         pref.setKey(pkg.name);
-        pref.setTitle(info.applicationInfo.loadLabel(mPackageManager));
-        pref.setIcon(info.applicationInfo.loadIcon(mPackageManager));
+        pref.setTitle(LabelCache.get(getActivity()).getLabel(info.applicationInfo));
+        AppIconLoader.get(getActivity()).load(pkg.name, pref::setIcon);
         pref.setPersistent(false);
         pref.setOnPreferenceClickListener(this);
         return pref;
@@ -57,6 +57,13 @@ import com.bumptech.glide.Glide;
 
 import com.android.internal.util.evolution.ThemeUtils;
 
+import com.evolution.settings.fragments.themes.OverlayPickerAdapter;
+import com.evolution.settings.utils.LabelCache;
+import com.evolution.settings.utils.OverlayCatalog;
+import com.evolution.settings.utils.OverlayResourcesPool;
+import com.evolution.settings.utils.OverlayStateCache;
+import com.evolution.settings.utils.OverlayTransaction;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -70,6 +77,7 @@ public class BrightnessSlider extends SettingsPreferenceFragment {
 
     private RecyclerView mRecyclerView;
     private ThemeUtils mThemeUtils;
+    private OverlayStateCache mOverlayState;
     private String mCategory = "android.theme.customization.brightness_slider";
 
     private List<String> mPkgs;
@@ -80,7 +88,9 @@ public class BrightnessSlider extends SettingsPreferenceFragment {
         getActivity().setTitle(R.string.theme_customization_brightness_slider_title);
 
         mThemeUtils = new ThemeUtils(getActivity());
-        mPkgs = mThemeUtils.getOverlayPackagesForCategory(mCategory, "com.android.systemui");
+        mOverlayState = OverlayStateCache.get(getActivity());
+        mPkgs = OverlayCatalog.get(getActivity()).getPackages(mCategory, "com.android.systemui");
+        LabelCache.get(getActivity()).preload(mPkgs);
     }
 
     @Override
@@ -90,10 +100,8 @@ public class BrightnessSlider extends SettingsPreferenceFragment {
                 R.layout.item_view, container, false);
 
         mRecyclerView = (RecyclerView) view.findViewById(R.id.recycler_view);
-        GridLayoutManager gridLayoutManager = new GridLayoutManager(getActivity(), 1);
-        mRecyclerView.setLayoutManager(gridLayoutManager);
         Adapter mAdapter = new Adapter(getActivity());
-        mRecyclerView.setAdapter(mAdapter);
+        OverlayPickerAdapter.setUpGrid(mRecyclerView, 1, mAdapter);
 
         return view;
     }
@@ -108,12 +116,11 @@ public class BrightnessSlider extends SettingsPreferenceFragment {
         super.onResume();
     }
 
-    public class Adapter extends RecyclerView.Adapter<Adapter.CustomViewHolder> {
+    public class Adapter extends OverlayPickerAdapter<Adapter.CustomViewHolder> {
         Context context;
-        String mSelectedPkg;
-        String mAppliedPkg;
 
         public Adapter(Context context) {
+            super(mPkgs, mOverlayState.getEnabledPackage(mCategory, "com.android.systemui"));
             this.context = context;
         }
 
@@ -128,40 +135,18 @@ public class BrightnessSlider extends SettingsPreferenceFragment {
         public void onBindViewHolder(CustomViewHolder holder, final int position) {
             String navPkg = mPkgs.get(position);
 
-            String currentPackageName = mThemeUtils.getOverlayInfos(mCategory, "com.android.systemui").stream()
-                .filter(info -> info.isEnabled())
-                .map(info -> info.packageName)
-                .findFirst()
-                .orElse("com.android.systemui");
-
             holder.name.setText("com.android.systemui".equals(navPkg) ? "Default" : getLabel(holder.name.getContext(), navPkg));
 
             holder.name.setTextSize(24);
 
-            if (currentPackageName.equals(navPkg)) {
-                mAppliedPkg = navPkg;
-                if (mSelectedPkg == null) {
-                    mSelectedPkg = navPkg;
-                }
-            }
-
-            holder.itemView.setActivated(navPkg == mSelectedPkg);
             holder.itemView.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    updateActivatedStatus(mSelectedPkg, false);
-                    updateActivatedStatus(navPkg, true);
-                    mSelectedPkg = navPkg;
-                    enableOverlays(position);
+                    applySelection(navPkg, createTransaction(position));
                 }
             });
         }
 
-        @Override
-        public int getItemCount() {
-            return mPkgs.size();
-        }
-
         public class CustomViewHolder extends RecyclerView.ViewHolder {
             TextView name;
             public CustomViewHolder(View itemView) {
@@ -169,25 +154,11 @@ public class BrightnessSlider extends SettingsPreferenceFragment {
                 name = (TextView) itemView.findViewById(R.id.option_label);
             }
         }
-
-        private void updateActivatedStatus(String pkg, boolean isActivated) {
-            int index = mPkgs.indexOf(pkg);
-            if (index < 0) {
-                return;
-            }
-            RecyclerView.ViewHolder holder = mRecyclerView.findViewHolderForAdapterPosition(index);
-            if (holder != null && holder.itemView != null) {
-                holder.itemView.setActivated(isActivated);
-            }
-        }
     }
 
     public Drawable getDrawable(Context context, String pkg, String drawableName) {
-        try {
-            PackageManager pm = context.getPackageManager();
-            Resources res = pm.getResourcesForApplication(pkg);
-            int resId = res.getIdentifier(drawableName, "drawable", pkg);
-            return res.getDrawable(resId);
+        try (OverlayResourcesPool.Handle res = OverlayResourcesPool.get(context).acquire(pkg)) {
+            return res.getResources().getDrawable(res.getIdentifier(drawableName, "drawable"));
         }
         catch (PackageManager.NameNotFoundException e) {
             e.printStackTrace();
@@ -196,17 +167,11 @@ public class BrightnessSlider extends SettingsPreferenceFragment {
     }
 
     public String getLabel(Context context, String pkg) {
-        PackageManager pm = context.getPackageManager();
-        try {
-            return pm.getApplicationInfo(pkg, 0)
-                    .loadLabel(pm).toString();
-        } catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
-        }
-        return pkg;
+        return LabelCache.get(context).getLabel(pkg);
     }
 
-    public void enableOverlays(int position) {
-        mThemeUtils.setOverlayEnabled(mCategory, mPkgs.get(position), "com.android.systemui");
+    public OverlayTransaction createTransaction(int position) {
+        return new OverlayTransaction(getActivity(), mThemeUtils)
+                .setOverlayEnabled(mCategory, mPkgs.get(position), "com.android.systemui");
     }
 }
@@ -37,6 +37,7 @@ import com.android.settingslib.search.SearchIndexable;
 
 import com.evolution.settings.preference.SystemSettingListPreference;
 import com.evolution.settings.preference.SystemSettingSeekBarPreference;
+import com.evolution.settings.utils.OverlayTransaction;
 
 import java.util.List;
 
@@ -146,10 +147,21 @@ public class QuickSettings extends SettingsPreferenceFragment implements
             return true;
         } else if (preference == mQsUI) {
             int value = Integer.parseInt((String) newValue);
+            final int previous = Settings.System.getIntForUser(resolver,
+                    Settings.System.QS_TILE_UI_STYLE, 0, UserHandle.USER_CURRENT);
             Settings.System.putIntForUser(resolver,
                     Settings.System.QS_TILE_UI_STYLE, value, UserHandle.USER_CURRENT);
-            updateQsStyle(getActivity());
-            checkQSOverlays(getActivity());
+            // Disabled until the overlays are applied, checkQSOverlays enables it again
+            mQsUI.setEnabled(false);
+            updateQsStyle(getActivity(), success -> {
+                if (!success) {
+                    Settings.System.putIntForUser(resolver,
+                            Settings.System.QS_TILE_UI_STYLE, previous, UserHandle.USER_CURRENT);
+                }
+                if (getActivity() != null) {
+                    checkQSOverlays(getActivity());
+                }
+            });
             return true;
         }
         return false;
@@ -183,7 +195,7 @@ public class QuickSettings extends SettingsPreferenceFragment implements
         mTileAnimationInterpolator.setEnabled(tileAnimationStyle != 0);
     }
 
-    private static void updateQsStyle(Context context) {
+    private static void updateQsStyle(Context context, OverlayTransaction.Callback callback) {
         ContentResolver resolver = context.getContentResolver();
 
         boolean isA11Style = Settings.System.getIntForUser(resolver,
@@ -197,12 +209,14 @@ public class QuickSettings extends SettingsPreferenceFragment implements
             mThemeUtils = new ThemeUtils(context);
         }
 
-        // reset all overlays before applying
-        mThemeUtils.setOverlayEnabled(qsUIStyleCategory, overlayThemeTarget, overlayThemeTarget);
+        // reset all overlays before applying, in the same transaction
+        final OverlayTransaction transaction = new OverlayTransaction(context, mThemeUtils)
+                .setOverlayEnabled(qsUIStyleCategory, overlayThemeTarget, overlayThemeTarget);
 
         if (isA11Style) {
-            mThemeUtils.setOverlayEnabled(qsUIStyleCategory, overlayThemePackage, overlayThemeTarget);
+            transaction.setOverlayEnabled(qsUIStyleCategory, overlayThemePackage, overlayThemeTarget);
         }
+        transaction.apply(callback);
     }
 
     private void checkQSOverlays(Context context) {
@@ -57,6 +57,13 @@ import com.bumptech.glide.Glide;
 
 import com.android.internal.util.evolution.ThemeUtils;
 
+import com.evolution.settings.utils.LabelCache;
+import com.evolution.settings.utils.OverlayCatalog;
+import com.evolution.settings.utils.OverlayPreviewRenderer;
+import com.evolution.settings.utils.OverlayResourcesPool;
+import com.evolution.settings.utils.OverlayStateCache;
+import com.evolution.settings.utils.OverlayTransaction;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -70,6 +77,9 @@ public class DataIcons extends SettingsPreferenceFragment {
 
     private RecyclerView mRecyclerView;
     private ThemeUtils mThemeUtils;
+    private OverlayStateCache mOverlayState;
+    private OverlayPreviewRenderer mPreviews;
+    private int mPreviewSize;
     private String mCategory = "android.customization.sb_data";
 
     private List<String> mPkgs;
@@ -80,7 +90,11 @@ public class DataIcons extends SettingsPreferenceFragment {
         getActivity().setTitle(R.string.theme_customization_data_icon_title);
 
         mThemeUtils = new ThemeUtils(getActivity());
-        mPkgs = mThemeUtils.getOverlayPackagesForCategory(mCategory, "com.android.systemui");
+        mOverlayState = OverlayStateCache.get(getActivity());
+        mPreviews = OverlayPreviewRenderer.get(getActivity());
+        mPreviewSize = getResources().getDimensionPixelSize(R.dimen.theme_preview_icon_size);
+        mPkgs = OverlayCatalog.get(getActivity()).getPackages(mCategory, "com.android.systemui");
+        LabelCache.get(getActivity()).preload(mPkgs);
     }
 
     @Override
@@ -90,10 +104,8 @@ public class DataIcons extends SettingsPreferenceFragment {
                 R.layout.item_view, container, false);
 
         mRecyclerView = (RecyclerView) view.findViewById(R.id.recycler_view);
-        GridLayoutManager gridLayoutManager = new GridLayoutManager(getActivity(), 2);
-        mRecyclerView.setLayoutManager(gridLayoutManager);
         Adapter mAdapter = new Adapter(getActivity());
-        mRecyclerView.setAdapter(mAdapter);
+        OverlayPickerAdapter.setUpGrid(mRecyclerView, 2, mAdapter);
 
         return view;
     }
@@ -108,12 +120,11 @@ public class DataIcons extends SettingsPreferenceFragment {
         super.onResume();
     }
 
-    public class Adapter extends RecyclerView.Adapter<Adapter.CustomViewHolder> {
+    public class Adapter extends OverlayPickerAdapter<Adapter.CustomViewHolder> {
         Context context;
-        String mSelectedPkg;
-        String mAppliedPkg;
 
         public Adapter(Context context) {
+            super(mPkgs, mOverlayState.getEnabledPackage(mCategory, "com.android.systemui"));
             this.context = context;
         }
 
@@ -128,42 +139,26 @@ public class DataIcons extends SettingsPreferenceFragment {
         public void onBindViewHolder(CustomViewHolder holder, final int position) {
             String dataPkg = mPkgs.get(position);
 
-            holder.image1.setBackgroundDrawable(getDrawable(holder.image1.getContext(), dataPkg, "ic_4g_mobiledata"));
-            holder.image2.setBackgroundDrawable(getDrawable(holder.image2.getContext(), dataPkg, "ic_lte_mobiledata"));
-            holder.image3.setBackgroundDrawable(getDrawable(holder.image3.getContext(), dataPkg, "ic_5g_mobiledata"));
-
-            String currentPackageName = mThemeUtils.getOverlayInfos(mCategory, "com.android.systemui").stream()
-                .filter(info -> info.isEnabled())
-                .map(info -> info.packageName)
-                .findFirst()
-                .orElse("com.android.systemui");
+            mPreviews.loadInto(holder.image1, dataPkg, getSourcePackage(dataPkg),
+                    "ic_4g_mobiledata", mPreviewSize,
+                    () -> getDrawable(context, dataPkg, "ic_4g_mobiledata"));
+            mPreviews.loadInto(holder.image2, dataPkg, getSourcePackage(dataPkg),
+                    "ic_lte_mobiledata", mPreviewSize,
+                    () -> getDrawable(context, dataPkg, "ic_lte_mobiledata"));
+            mPreviews.loadInto(holder.image3, dataPkg, getSourcePackage(dataPkg),
+                    "ic_5g_mobiledata", mPreviewSize,
+                    () -> getDrawable(context, dataPkg, "ic_5g_mobiledata"));
 
             holder.name.setText("com.android.systemui".equals(dataPkg) ? "Default" : getLabel(holder.name.getContext(), dataPkg));
 
-            if (currentPackageName.equals(dataPkg)) {
-                mAppliedPkg = dataPkg;
-                if (mSelectedPkg == null) {
-                    mSelectedPkg = dataPkg;
-                }
-            }
-
-            holder.itemView.setActivated(dataPkg == mSelectedPkg);
             holder.itemView.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    updateActivatedStatus(mSelectedPkg, false);
-                    updateActivatedStatus(dataPkg, true);
-                    mSelectedPkg = dataPkg;
-                    enableOverlays(position);
+                    applySelection(dataPkg, createTransaction(position));
                 }
             });
         }
 
-        @Override
-        public int getItemCount() {
-            return mPkgs.size();
-        }
-
         public class CustomViewHolder extends RecyclerView.ViewHolder {
             TextView name;
             ImageView image1;
@@ -177,27 +172,19 @@ public class DataIcons extends SettingsPreferenceFragment {
                 image3 = (ImageView) itemView.findViewById(R.id.image3);
             }
         }
+    }
 
-        private void updateActivatedStatus(String pkg, boolean isActivated) {
-            int index = mPkgs.indexOf(pkg);
-            if (index < 0) {
-                return;
-            }
-            RecyclerView.ViewHolder holder = mRecyclerView.findViewHolderForAdapterPosition(index);
-            if (holder != null && holder.itemView != null) {
-                holder.itemView.setActivated(isActivated);
-            }
-        }
+    /**
+     * Returns the package the previews of pkg load their drawables from.
+     */
+    public String getSourcePackage(String pkg) {
+        return pkg.equals("com.android.systemui") ? "com.android.settingslib" : pkg;
     }
 
     public Drawable getDrawable(Context context, String pkg, String drawableName) {
-        if (pkg.equals("com.android.systemui"))
-            pkg = "com.android.settingslib";
-        try {
-            PackageManager pm = context.getPackageManager();
-            Resources res = pm.getResourcesForApplication(pkg);
-            int resId = res.getIdentifier(drawableName, "drawable", pkg);
-            return res.getDrawable(resId);
+        pkg = getSourcePackage(pkg);
+        try (OverlayResourcesPool.Handle res = OverlayResourcesPool.get(context).acquire(pkg)) {
+            return res.getResources().getDrawable(res.getIdentifier(drawableName, "drawable"));
         }
         catch (PackageManager.NameNotFoundException e) {
             e.printStackTrace();
@@ -206,17 +193,11 @@ public class DataIcons extends SettingsPreferenceFragment {
     }
 
     public String getLabel(Context context, String pkg) {
-        PackageManager pm = context.getPackageManager();
-        try {
-            return pm.getApplicationInfo(pkg, 0)
-                    .loadLabel(pm).toString();
-        } catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
-        }
-        return pkg;
+        return LabelCache.get(context).getLabel(pkg);
     }
 
-    public void enableOverlays(int position) {
-        mThemeUtils.setOverlayEnabled(mCategory, mPkgs.get(position), "com.android.systemui");
+    public OverlayTransaction createTransaction(int position) {
+        return new OverlayTransaction(getActivity(), mThemeUtils)
+                .setOverlayEnabled(mCategory, mPkgs.get(position), "com.android.systemui");
     }
 }
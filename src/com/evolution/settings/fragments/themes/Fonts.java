@@ -62,6 +62,12 @@ import com.bumptech.glide.Glide;
 
 import com.android.internal.util.evolution.ThemeUtils;
 
+import com.evolution.settings.utils.LabelCache;
+import com.evolution.settings.utils.OverlayCatalog;
+import com.evolution.settings.utils.OverlayStateCache;
+import com.evolution.settings.utils.OverlayTransaction;
+import com.evolution.settings.utils.OverlayTypefaceCache;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Arrays;
@@ -71,8 +77,12 @@ import org.json.JSONException;
 
 public class Fonts extends SettingsPreferenceFragment {
 
+    private static final String FONT_FAMILY = "config_bodyFontFamily";
+
     private RecyclerView mRecyclerView;
     private ThemeUtils mThemeUtils;
+    private OverlayStateCache mOverlayState;
+    private OverlayTypefaceCache mTypefaces;
     private String mCategory = FONT_KEY;
 
     private List<String> mPkgs;
@@ -83,7 +93,12 @@ public class Fonts extends SettingsPreferenceFragment {
         getActivity().setTitle(R.string.theme_customization_font_title);
 
         mThemeUtils = new ThemeUtils(getActivity());
-        mPkgs = mThemeUtils.getOverlayPackagesForCategory(mCategory, "android");
+        mOverlayState = OverlayStateCache.get(getActivity());
+        mPkgs = OverlayCatalog.get(getActivity()).getPackages(mCategory, "android");
+        LabelCache.get(getActivity()).preload(mPkgs);
+
+        mTypefaces = OverlayTypefaceCache.get(getActivity());
+        mTypefaces.preload(mPkgs, FONT_FAMILY);
     }
 
     @Override
@@ -93,10 +108,8 @@ public class Fonts extends SettingsPreferenceFragment {
                 R.layout.item_view, container, false);
 
         mRecyclerView = (RecyclerView) view.findViewById(R.id.recycler_view);
-        GridLayoutManager gridLayoutManager = new GridLayoutManager(getActivity(), 1);
-        mRecyclerView.setLayoutManager(gridLayoutManager);
         Adapter mAdapter = new Adapter(getActivity());
-        mRecyclerView.setAdapter(mAdapter);
+        OverlayPickerAdapter.setUpGrid(mRecyclerView, 1, mAdapter);
 
         return view;
     }
@@ -111,12 +124,11 @@ public class Fonts extends SettingsPreferenceFragment {
         super.onResume();
     }
 
-    public class Adapter extends RecyclerView.Adapter<Adapter.CustomViewHolder> {
+    public class Adapter extends OverlayPickerAdapter<Adapter.CustomViewHolder> {
         Context context;
-        String mSelectedPkg;
-        String mAppliedPkg;
 
         public Adapter(Context context) {
+            super(mPkgs, mOverlayState.getEnabledPackage(mCategory, "android"));
             this.context = context;
         }
 
@@ -132,41 +144,19 @@ public class Fonts extends SettingsPreferenceFragment {
             String pkg = mPkgs.get(position);
             String label = getLabel(holder.itemView.getContext(), pkg);
 
-            String currentPackageName = mThemeUtils.getOverlayInfos(mCategory).stream()
-                .filter(info -> info.isEnabled())
-                .map(info -> info.packageName)
-                .findFirst()
-                .orElse("android");
-
             holder.title.setText("android".equals(pkg) ? "Default" : label);
             holder.title.setTextSize(20);
-            holder.title.setTypeface(getTypeface(holder.title.getContext(), pkg));
+            mTypefaces.loadInto(holder.title, pkg, FONT_FAMILY);
             holder.name.setVisibility(View.GONE);
 
-            if (currentPackageName.equals(pkg)) {
-                mAppliedPkg = pkg;
-                if (mSelectedPkg == null) {
-                    mSelectedPkg = pkg;
-                }
-            }
-
-            holder.itemView.setActivated(pkg == mSelectedPkg);
             holder.itemView.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    updateActivatedStatus(mSelectedPkg, false);
-                    updateActivatedStatus(pkg, true);
-                    mSelectedPkg = pkg;
-                    enableOverlays(position);
+                    applySelection(pkg, createTransaction(position));
                 }
             });
         }
 
-        @Override
-        public int getItemCount() {
-            return mPkgs.size();
-        }
-
         public class CustomViewHolder extends RecyclerView.ViewHolder {
             TextView name;
             TextView title;
@@ -176,46 +166,14 @@ public class Fonts extends SettingsPreferenceFragment {
                 name = (TextView) itemView.findViewById(R.id.option_label);
             }
         }
-
-        private void updateActivatedStatus(String pkg, boolean isActivated) {
-            int index = mPkgs.indexOf(pkg);
-            if (index < 0) {
-                return;
-            }
-            RecyclerView.ViewHolder holder = mRecyclerView.findViewHolderForAdapterPosition(index);
-            if (holder != null && holder.itemView != null) {
-                holder.itemView.setActivated(isActivated);
-            }
-        }
-    }
-
-    public Typeface getTypeface(Context context, String pkg) {
-        try {
-            PackageManager pm = context.getPackageManager();
-            Resources res = pkg.equals("android") ? Resources.getSystem()
-                    : pm.getResourcesForApplication(pkg);
-            return Typeface.create(res.getString(
-                    res.getIdentifier("config_bodyFontFamily",
-                    "string", pkg)), Typeface.NORMAL);
-        }
-        catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
-        }
-        return null;
     }
 
     public String getLabel(Context context, String pkg) {
-        PackageManager pm = context.getPackageManager();
-        try {
-            return pm.getApplicationInfo(pkg, 0)
-                    .loadLabel(pm).toString();
-        } catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
-        }
-        return pkg;
+        return LabelCache.get(context).getLabel(pkg);
     }
 
-    public void enableOverlays(int position) {
-        mThemeUtils.setOverlayEnabled(mCategory, mPkgs.get(position), "android");
+    public OverlayTransaction createTransaction(int position) {
+        return new OverlayTransaction(getActivity(), mThemeUtils)
+                .setOverlayEnabled(mCategory, mPkgs.get(position), "android");
     }
 }
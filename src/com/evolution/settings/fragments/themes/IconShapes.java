@@ -66,8 +66,14 @@ import com.bumptech.glide.Glide;
 
 import com.android.internal.util.evolution.ThemeUtils;
 
+import com.evolution.settings.utils.LabelCache;
+import com.evolution.settings.utils.OverlayCatalog;
+import com.evolution.settings.utils.OverlayPreviewRenderer;
+import com.evolution.settings.utils.OverlayResourcesPool;
+import com.evolution.settings.utils.OverlayStateCache;
+import com.evolution.settings.utils.OverlayTransaction;
+
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Arrays;
 
@@ -78,6 +84,9 @@ public class IconShapes extends SettingsPreferenceFragment {
 
     private RecyclerView mRecyclerView;
     private ThemeUtils mThemeUtils;
+    private OverlayStateCache mOverlayState;
+    private OverlayPreviewRenderer mPreviews;
+    private int mPreviewSize;
 
     private String mCategory = ICON_SHAPE_KEY;
 
@@ -89,8 +98,11 @@ public class IconShapes extends SettingsPreferenceFragment {
         getActivity().setTitle(R.string.theme_customization_icon_shape_title);
 
         mThemeUtils = new ThemeUtils(getActivity());
-        mPkgs = mThemeUtils.getOverlayPackagesForCategory(mCategory, "android");
-        Collections.sort(mPkgs);
+        mOverlayState = OverlayStateCache.get(getActivity());
+        mPreviews = OverlayPreviewRenderer.get(getActivity());
+        mPreviewSize = getResources().getDimensionPixelSize(R.dimen.theme_preview_shape_size);
+        mPkgs = OverlayCatalog.get(getActivity()).getSortedPackages(mCategory, "android");
+        LabelCache.get(getActivity()).preload(mPkgs);
     }
 
     @Override
@@ -100,10 +112,8 @@ public class IconShapes extends SettingsPreferenceFragment {
                 R.layout.item_view, container, false);
 
         mRecyclerView = (RecyclerView) view.findViewById(R.id.recycler_view);
-        GridLayoutManager gridLayoutManager = new GridLayoutManager(getActivity(), 3);
-        mRecyclerView.setLayoutManager(gridLayoutManager);
         Adapter mAdapter = new Adapter(getActivity());
-        mRecyclerView.setAdapter(mAdapter);
+        OverlayPickerAdapter.setUpGrid(mRecyclerView, 3, mAdapter);
 
         return view;
     }
@@ -118,13 +128,14 @@ public class IconShapes extends SettingsPreferenceFragment {
         super.onResume();
     }
 
-    public class Adapter extends RecyclerView.Adapter<Adapter.CustomViewHolder> {
+    public class Adapter extends OverlayPickerAdapter<Adapter.CustomViewHolder> {
         Context context;
-        String mSelectedPkg;
-        String mAppliedPkg;
+        final int mAccentColor;
 
         public Adapter(Context context) {
+            super(mPkgs, mOverlayState.getEnabledPackage(mCategory, "android"));
             this.context = context;
+            mAccentColor = Utils.getColorAttrDefaultColor(context, android.R.attr.colorAccent);
         }
 
         @Override
@@ -138,34 +149,24 @@ public class IconShapes extends SettingsPreferenceFragment {
         public void onBindViewHolder(CustomViewHolder holder, final int position) {
             String pkg = mPkgs.get(position);
 
-            holder.image.setBackgroundDrawable(mThemeUtils.createShapeDrawable(pkg));
-
-            String currentPackageName = mThemeUtils.getOverlayInfos(mCategory).stream()
-                .filter(info -> info.isEnabled())
-                .map(info -> info.packageName)
-                .findFirst()
-                .orElse("android");
+            mPreviews.loadInto(holder.image, pkg, "shape", mPreviewSize,
+                    () -> mThemeUtils.createShapeDrawable(pkg));
 
             holder.name.setText("android".equals(pkg) ? "Default" : getLabel(holder.name.getContext(), pkg));
 
-            final boolean isDefault = "android".equals(currentPackageName) && "android".equals(pkg);
-            final int color = ColorUtils.setAlphaComponent(
-                     Utils.getColorAttrDefaultColor(getContext(), android.R.attr.colorAccent),
-                     pkg.equals(currentPackageName) || isDefault ? 170 : 75);
-            holder.image.setBackgroundTintList(ColorStateList.valueOf(color));
-
             holder.itemView.findViewById(R.id.option_tile).setBackgroundDrawable(null);
             holder.itemView.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    enableOverlays(position);
+                    applySelection(pkg, createTransaction(position));
                 }
             });
         }
 
         @Override
-        public int getItemCount() {
-            return mPkgs.size();
+        protected void onBindActivated(CustomViewHolder holder, boolean activated) {
+            final int color = ColorUtils.setAlphaComponent(mAccentColor, activated ? 170 : 75);
+            holder.image.setBackgroundTintList(ColorStateList.valueOf(color));
         }
 
         public class CustomViewHolder extends RecyclerView.ViewHolder {
@@ -180,11 +181,8 @@ public class IconShapes extends SettingsPreferenceFragment {
     }
 
     public Drawable getDrawable(Context context, String pkg, String drawableName) {
-        try {
-            PackageManager pm = context.getPackageManager();
-            Resources res = pkg.equals("android") ? Resources.getSystem()
-                    : pm.getResourcesForApplication(pkg);
-            return res.getDrawable(res.getIdentifier(drawableName, "drawable", pkg));
+        try (OverlayResourcesPool.Handle res = OverlayResourcesPool.get(context).acquire(pkg)) {
+            return res.getResources().getDrawable(res.getIdentifier(drawableName, "drawable"));
         }
         catch (PackageManager.NameNotFoundException e) {
             e.printStackTrace();
@@ -193,17 +191,11 @@ public class IconShapes extends SettingsPreferenceFragment {
     }
 
     public String getLabel(Context context, String pkg) {
-        PackageManager pm = context.getPackageManager();
-        try {
-            return pm.getApplicationInfo(pkg, 0)
-                    .loadLabel(pm).toString();
-        } catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
-        }
-        return pkg;
+        return LabelCache.get(context).getLabel(pkg);
     }
 
-    public void enableOverlays(int position) {
-        mThemeUtils.setOverlayEnabled(mCategory, mPkgs.get(position), "android");
+    public OverlayTransaction createTransaction(int position) {
+        return new OverlayTransaction(getActivity(), mThemeUtils)
+                .setOverlayEnabled(mCategory, mPkgs.get(position), "android");
     }
 }
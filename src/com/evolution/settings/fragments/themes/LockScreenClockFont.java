@@ -26,8 +26,6 @@ import android.graphics.Typeface;
 import android.graphics.drawable.AnimationDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.provider.SearchIndexableResource;
 import android.provider.Settings;
 import android.view.LayoutInflater;
@@ -62,11 +60,13 @@ import com.android.settings.SettingsPreferenceFragment;
 
 import com.android.internal.util.evolution.ThemeUtils;
 
+import com.evolution.settings.utils.LabelCache;
+import com.evolution.settings.utils.OverlayCatalog;
+import com.evolution.settings.utils.OverlayStateCache;
+import com.evolution.settings.utils.OverlayTransaction;
+import com.evolution.settings.utils.OverlayTypefaceCache;
+
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.List;
 import java.util.Arrays;
 
@@ -75,25 +75,28 @@ import org.json.JSONException;
 
 public class LockScreenClockFont extends SettingsPreferenceFragment {
 
+    private static final String FONT_FAMILY = "config_clockFontFamily";
+
     private RecyclerView mRecyclerView;
     private ThemeUtils mThemeUtils;
+    private OverlayStateCache mOverlayState;
+    private OverlayTypefaceCache mTypefaces;
     private String mCategory = "android.theme.customization.lockscreen_clock_font";
 
     private List<String> mPkgs;
 
-    private ExecutorService mExecutor = Executors.newSingleThreadExecutor();
-    private Handler mHandler = new Handler();
-    private final AtomicBoolean mApplyingOverlays = new AtomicBoolean(false);
-
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         getActivity().setTitle(R.string.lockscreen_clock_font_title);
 
-        mHandler = new Handler();
         mThemeUtils = new ThemeUtils(getActivity());
-        mPkgs = mThemeUtils.getOverlayPackagesForCategory(mCategory, "android");
-        Collections.sort(mPkgs);
+        mOverlayState = OverlayStateCache.get(getActivity());
+        mPkgs = OverlayCatalog.get(getActivity()).getSortedPackages(mCategory, "android");
+        LabelCache.get(getActivity()).preload(mPkgs);
+
+        mTypefaces = OverlayTypefaceCache.get(getActivity());
+        mTypefaces.preload(mPkgs, FONT_FAMILY);
     }
 
     @Override
@@ -103,10 +106,8 @@ public class LockScreenClockFont extends SettingsPreferenceFragment {
                 R.layout.item_view, container, false);
 
         mRecyclerView = (RecyclerView) view.findViewById(R.id.recycler_view);
-        GridLayoutManager gridLayoutManager = new GridLayoutManager(getActivity(), 2);
-        mRecyclerView.setLayoutManager(gridLayoutManager);
         Adapter mAdapter = new Adapter(getActivity());
-        mRecyclerView.setAdapter(mAdapter);
+        OverlayPickerAdapter.setUpGrid(mRecyclerView, 2, mAdapter);
 
         return view;
     }
@@ -121,12 +122,11 @@ public class LockScreenClockFont extends SettingsPreferenceFragment {
         super.onResume();
     }
 
-    public class Adapter extends RecyclerView.Adapter<Adapter.CustomViewHolder> {
+    public class Adapter extends OverlayPickerAdapter<Adapter.CustomViewHolder> {
         Context context;
-        String mSelectedPkg;
-        String mAppliedPkg;
 
         public Adapter(Context context) {
+            super(mPkgs, mOverlayState.getEnabledPackage(mCategory, "android"));
             this.context = context;
         }
 
@@ -142,42 +142,19 @@ public class LockScreenClockFont extends SettingsPreferenceFragment {
             String pkg = mPkgs.get(position);
             String label = getLabel(holder.itemView.getContext(), pkg);
 
-            String currentPackageName = mThemeUtils.getOverlayInfos(mCategory).stream()
-                .filter(info -> info.isEnabled())
-                .map(info -> info.packageName)
-                .findFirst()
-                .orElse("android");
-
             holder.title.setTextSize(32);
-            holder.title.setTypeface(getTypeface(holder.title.getContext(), pkg));
+            mTypefaces.loadInto(holder.title, pkg, FONT_FAMILY);
             holder.name.setText("android".equals(pkg) ? "Default" : label);
             holder.name.setVisibility(View.VISIBLE);
 
-            if (currentPackageName.equals(pkg)) {
-                mAppliedPkg = pkg;
-                if (mSelectedPkg == null) {
-                    mSelectedPkg = pkg;
-                }
-            }
-
-            holder.itemView.setActivated(pkg == mSelectedPkg);
             holder.itemView.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    if (mApplyingOverlays.get()) return;
-                    updateActivatedStatus(mSelectedPkg, false);
-                    updateActivatedStatus(pkg, true);
-                    mSelectedPkg = pkg;
-                    enableOverlays(position);
+                    applySelection(pkg, createTransaction(position));
                 }
             });
         }
 
-        @Override
-        public int getItemCount() {
-            return mPkgs.size();
-        }
-
         public class CustomViewHolder extends RecyclerView.ViewHolder {
             TextView name;
             TextView title;
@@ -187,50 +164,14 @@ public class LockScreenClockFont extends SettingsPreferenceFragment {
                 name = (TextView) itemView.findViewById(R.id.option_label);
             }
         }
-
-        private void updateActivatedStatus(String pkg, boolean isActivated) {
-            int index = mPkgs.indexOf(pkg);
-            if (index < 0) {
-                return;
-            }
-            RecyclerView.ViewHolder holder = mRecyclerView.findViewHolderForAdapterPosition(index);
-            if (holder != null && holder.itemView != null) {
-                holder.itemView.setActivated(isActivated);
-            }
-        }
-    }
-
-    public Typeface getTypeface(Context context, String pkg) {
-        try {
-            PackageManager pm = context.getPackageManager();
-            Resources res = pkg.equals("android") ? Resources.getSystem()
-                    : pm.getResourcesForApplication(pkg);
-            return Typeface.create(res.getString(
-                    res.getIdentifier("config_clockFontFamily",
-                    "string", pkg)), Typeface.NORMAL);
-        }
-        catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
-        }
-        return null;
     }
 
     public String getLabel(Context context, String pkg) {
-        PackageManager pm = context.getPackageManager();
-        try {
-            return pm.getApplicationInfo(pkg, 0)
-                    .loadLabel(pm).toString();
-        } catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
-        }
-        return pkg;
+        return LabelCache.get(context).getLabel(pkg);
     }
 
-    public void enableOverlays(int position) {
-        mApplyingOverlays.set(true);
-        mExecutor.execute(() -> {
-            mThemeUtils.setOverlayEnabled(mCategory, mPkgs.get(position), "android");
-            mHandler.post(() -> mApplyingOverlays.set(false));
-        });
+    public OverlayTransaction createTransaction(int position) {
+        return new OverlayTransaction(getActivity(), mThemeUtils)
+                .setOverlayEnabled(mCategory, mPkgs.get(position), "android");
     }
 }
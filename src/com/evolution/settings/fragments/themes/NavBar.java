@@ -54,6 +54,13 @@ import com.android.settings.search.BaseSearchIndexProvider;
 import com.android.settingslib.search.Indexable;
 import com.android.settings.SettingsPreferenceFragment;
 
+import com.evolution.settings.utils.LabelCache;
+import com.evolution.settings.utils.OverlayCatalog;
+import com.evolution.settings.utils.OverlayPreviewRenderer;
+import com.evolution.settings.utils.OverlayResourcesPool;
+import com.evolution.settings.utils.OverlayStateCache;
+import com.evolution.settings.utils.OverlayTransaction;
+
 import com.bumptech.glide.Glide;
 
 import java.util.ArrayList;
@@ -69,6 +76,9 @@ public class NavBar extends SettingsPreferenceFragment {
 
     private RecyclerView mRecyclerView;
     private ThemeUtils mThemeUtils;
+    private OverlayStateCache mOverlayState;
+    private OverlayPreviewRenderer mPreviews;
+    private int mPreviewSize;
     private String mCategory = "android.theme.customization.navbar";
 
     private List<String> mPkgs;
@@ -79,7 +89,11 @@ public class NavBar extends SettingsPreferenceFragment {
         getActivity().setTitle(R.string.theme_customization_navbar_title);
 
         mThemeUtils = new ThemeUtils(getActivity());
-        mPkgs = mThemeUtils.getOverlayPackagesForCategory(mCategory, "com.android.systemui");
+        mOverlayState = OverlayStateCache.get(getActivity());
+        mPreviews = OverlayPreviewRenderer.get(getActivity());
+        mPreviewSize = getResources().getDimensionPixelSize(R.dimen.theme_preview_icon_size);
+        mPkgs = OverlayCatalog.get(getActivity()).getPackages(mCategory, "com.android.systemui");
+        LabelCache.get(getActivity()).preload(mPkgs);
     }
 
     @Override
@@ -89,10 +103,8 @@ public class NavBar extends SettingsPreferenceFragment {
                 R.layout.item_view, container, false);
 
         mRecyclerView = (RecyclerView) view.findViewById(R.id.recycler_view);
-        GridLayoutManager gridLayoutManager = new GridLayoutManager(getActivity(), 2);
-        mRecyclerView.setLayoutManager(gridLayoutManager);
         Adapter mAdapter = new Adapter(getActivity());
-        mRecyclerView.setAdapter(mAdapter);
+        OverlayPickerAdapter.setUpGrid(mRecyclerView, 2, mAdapter);
 
         return view;
     }
@@ -107,12 +119,11 @@ public class NavBar extends SettingsPreferenceFragment {
         super.onResume();
     }
 
-    public class Adapter extends RecyclerView.Adapter<Adapter.CustomViewHolder> {
+    public class Adapter extends OverlayPickerAdapter<Adapter.CustomViewHolder> {
         Context context;
-        String mSelectedPkg;
-        String mAppliedPkg;
 
         public Adapter(Context context) {
+            super(mPkgs, mOverlayState.getEnabledPackage(mCategory, "com.android.systemui"));
             this.context = context;
         }
 
@@ -127,44 +138,30 @@ public class NavBar extends SettingsPreferenceFragment {
         public void onBindViewHolder(CustomViewHolder holder, final int position) {
             String navPkg = mPkgs.get(position);
 
-            holder.image1.setBackgroundDrawable(getDrawable(holder.image1.getContext(), navPkg, "ic_sysbar_back"));
-            holder.image2.setBackgroundDrawable(getDrawable(holder.image2.getContext(), navPkg, "ic_sysbar_home"));
-            holder.image3.setBackgroundDrawable(getDrawable(holder.image3.getContext(), navPkg, "ic_sysbar_recent"));
-
-            String currentPackageName = mThemeUtils.getOverlayInfos(mCategory, "com.android.systemui").stream()
-                .filter(info -> info.isEnabled())
-                .map(info -> info.packageName)
-                .findFirst()
-                .orElse("com.android.systemui");
+            mPreviews.loadInto(holder.image1, navPkg, getSourcePackage(navPkg),
+                    "ic_sysbar_back", mPreviewSize,
+                    () -> getDrawable(context, navPkg, "ic_sysbar_back"));
+            mPreviews.loadInto(holder.image2, navPkg, getSourcePackage(navPkg),
+                    "ic_sysbar_home", mPreviewSize,
+                    () -> getDrawable(context, navPkg, "ic_sysbar_home"));
+            mPreviews.loadInto(holder.image3, navPkg, getSourcePackage(navPkg),
+                    "ic_sysbar_recent", mPreviewSize,
+                    () -> getDrawable(context, navPkg, "ic_sysbar_recent"));
 
             holder.name.setText("com.android.systemui".equals(navPkg) ? "Default" : getLabel(holder.name.getContext(), navPkg));
 
-            if (currentPackageName.equals(navPkg)) {
-                mAppliedPkg = navPkg;
-                if (mSelectedPkg == null) {
-                    mSelectedPkg = navPkg;
-                }
-            }
-
-            holder.itemView.setActivated(navPkg == mSelectedPkg);
             holder.itemView.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    updateActivatedStatus(mSelectedPkg, false);
-                    updateActivatedStatus(navPkg, true);
-                    mSelectedPkg = navPkg;
-                    enableOverlays(position);
-                    Settings.System.putStringForUser(getContext().getContentResolver(),
-                            Settings.System.NAVBAR_STYLE, navPkg, UserHandle.USER_CURRENT);
+                    final Context appContext = v.getContext().getApplicationContext();
+                    applySelection(navPkg, createTransaction(position), () ->
+                            Settings.System.putStringForUser(appContext.getContentResolver(),
+                                    Settings.System.NAVBAR_STYLE, navPkg,
+                                    UserHandle.USER_CURRENT));
                 }
             });
         }
 
-        @Override
-        public int getItemCount() {
-            return mPkgs.size();
-        }
-
         public class CustomViewHolder extends RecyclerView.ViewHolder {
             TextView name;
             ImageView image1;
@@ -178,27 +175,19 @@ public class NavBar extends SettingsPreferenceFragment {
                 image3 = (ImageView) itemView.findViewById(R.id.image3);
             }
         }
+    }
 
-        private void updateActivatedStatus(String pkg, boolean isActivated) {
-            int index = mPkgs.indexOf(pkg);
-            if (index < 0) {
-                return;
-            }
-            RecyclerView.ViewHolder holder = mRecyclerView.findViewHolderForAdapterPosition(index);
-            if (holder != null && holder.itemView != null) {
-                holder.itemView.setActivated(isActivated);
-            }
-        }
+    /**
+     * Returns the package the previews of pkg load their drawables from.
+     */
+    public String getSourcePackage(String pkg) {
+        return pkg.equals("com.android.systemui") ? "com.android.settings" : pkg;
     }
 
     public Drawable getDrawable(Context context, String pkg, String drawableName) {
-        if (pkg.equals("com.android.systemui"))
-            pkg = "com.android.settings";
-        try {
-            PackageManager pm = context.getPackageManager();
-            Resources res = pm.getResourcesForApplication(pkg);
-            int resId = res.getIdentifier(drawableName, "drawable", pkg);
-            return res.getDrawable(resId);
+        pkg = getSourcePackage(pkg);
+        try (OverlayResourcesPool.Handle res = OverlayResourcesPool.get(context).acquire(pkg)) {
+            return res.getResources().getDrawable(res.getIdentifier(drawableName, "drawable"));
         }
         catch (PackageManager.NameNotFoundException e) {
             e.printStackTrace();
@@ -207,17 +196,11 @@ public class NavBar extends SettingsPreferenceFragment {
     }
 
     public String getLabel(Context context, String pkg) {
-        PackageManager pm = context.getPackageManager();
-        try {
-            return pm.getApplicationInfo(pkg, 0)
-                    .loadLabel(pm).toString();
-        } catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
-        }
-        return pkg;
+        return LabelCache.get(context).getLabel(pkg);
     }
 
-    public void enableOverlays(int position) {
-        mThemeUtils.setOverlayEnabled(mCategory, mPkgs.get(position), "com.android.systemui");
+    public OverlayTransaction createTransaction(int position) {
+        return new OverlayTransaction(getActivity(), mThemeUtils)
+                .setOverlayEnabled(mCategory, mPkgs.get(position), "com.android.systemui");
     }
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.fragments.themes;
+
+import android.util.ArrayMap;
+
+import com.evolution.settings.utils.OverlayTransaction;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.List;
+
+/**
+ * Base adapter of the overlay picker grids.
+ *
+ * Items are overlay packages with stable IDs, and moving the selection only
+ * rebinds the activated state of the two affected cells through a payload
+ * instead of binding them again in full.
+ */
+public abstract class OverlayPickerAdapter<VH extends RecyclerView.ViewHolder>
+        extends RecyclerView.Adapter<VH> {
+
+    private static final Object PAYLOAD_ACTIVATED = new Object();
+
+    protected final List<String> mPkgs;
+
+    // Alpha of the grid while a pick is being applied
+    private static final float APPLYING_ALPHA = 0.5f;
+
+    private final ArrayMap<String, Long> mIds = new ArrayMap<>();
+    private String mSelectedPkg;
+    private RecyclerView mRecyclerView;
+    private boolean mApplying;
+
+    /**
+     * @param pkgs the overlay packages to show
+     * @param appliedPkg the package applied now, selected initially
+     */
+    public OverlayPickerAdapter(List<String> pkgs, String appliedPkg) {
+        mPkgs = pkgs;
+        mSelectedPkg = appliedPkg;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Binds everything of the cell but its activated state.
+     */
+    public abstract void onBindViewHolder(@NonNull VH holder, int position);
+
+    /**
+     * Binds the activated state of the cell, which is all a selection change
+     * rebinds.
+     */
+    protected void onBindActivated(@NonNull VH holder, boolean activated) {
+        holder.itemView.setActivated(activated);
+    }
+
+    @Override
+    public final void onBindViewHolder(@NonNull VH holder, int position,
+            @NonNull List<Object> payloads) {
+        final boolean activated = mPkgs.get(position).equals(mSelectedPkg);
+        if (!payloads.isEmpty() && onlyActivated(payloads)) {
+            onBindActivated(holder, activated);
+            return;
+        }
+        onBindViewHolder(holder, position);
+        onBindActivated(holder, activated);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        mRecyclerView = recyclerView;
+        recyclerView.setAlpha(mApplying ? APPLYING_ALPHA : 1f);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        mRecyclerView = null;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        // Sequential per package, so IDs never collide and survive list changes
+        final String pkg = mPkgs.get(position);
+        Long id = mIds.get(pkg);
+        if (id == null) {
+            id = (long) mIds.size();
+            mIds.put(pkg, id);
+        }
+        return id;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mPkgs.size();
+    }
+
+    public String getSelectedPackage() {
+        return mSelectedPkg;
+    }
+
+    /**
+     * Moves the selection to pkg, rebinding only the activated state of the
+     * previously and newly selected cells.
+     */
+    public void setSelectedPackage(String pkg) {
+        final String previous = mSelectedPkg;
+        mSelectedPkg = pkg;
+        notifyActivatedChanged(previous);
+        notifyActivatedChanged(pkg);
+    }
+
+    /**
+     * Selects pkg and applies transaction, the overlay changes of the pick.
+     * The grid is dimmed and ignores picks until it is applied, and the
+     * selection moves back to the previous package if it fails.
+     */
+    public void applySelection(String pkg, OverlayTransaction transaction) {
+        applySelection(pkg, transaction, null);
+    }
+
+    /**
+     * Like {@link #applySelection(String, OverlayTransaction)}, running
+     * onApplied on the main thread once the transaction succeeded. It isn't
+     * run if the pick is ignored or fails.
+     */
+    public void applySelection(String pkg, OverlayTransaction transaction,
+            Runnable onApplied) {
+        if (mApplying || OverlayTransaction.isApplying()) {
+            return;
+        }
+        final String previous = mSelectedPkg;
+        setSelectedPackage(pkg);
+        setApplying(true);
+        transaction.apply(success -> {
+            setApplying(false);
+            if (success) {
+                if (onApplied != null) {
+                    onApplied.run();
+                }
+            } else if (pkg.equals(mSelectedPkg)) {
+                setSelectedPackage(previous);
+            }
+        });
+    }
+
+    private void setApplying(boolean applying) {
+        mApplying = applying;
+        if (mRecyclerView != null) {
+            mRecyclerView.setAlpha(applying ? APPLYING_ALPHA : 1f);
+        }
+    }
+
+    private void notifyActivatedChanged(String pkg) {
+        final int index = pkg != null ? mPkgs.indexOf(pkg) : -1;
+        if (index >= 0) {
+            notifyItemChanged(index, PAYLOAD_ACTIVATED);
+        }
+    }
+
+    private static boolean onlyActivated(List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_ACTIVATED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets up recyclerView as a grid of spanCount columns showing adapter.
+     * Initial prefetch covers the first rows, and a row's worth of cells is
+     * kept bound off screen so scrolling back doesn't rebind them.
+     */
+    public static void setUpGrid(RecyclerView recyclerView, int spanCount,
+            OverlayPickerAdapter<?> adapter) {
+        final GridLayoutManager layoutManager =
+                new GridLayoutManager(recyclerView.getContext(), spanCount);
+        layoutManager.setInitialPrefetchItemCount(spanCount * 2);
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.setItemViewCacheSize(spanCount * 2);
+        recyclerView.setAdapter(adapter);
+    }
+}
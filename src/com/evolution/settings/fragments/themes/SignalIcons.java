@@ -57,6 +57,13 @@ import com.bumptech.glide.Glide;
 
 import com.android.internal.util.evolution.ThemeUtils;
 
+import com.evolution.settings.utils.LabelCache;
+import com.evolution.settings.utils.OverlayCatalog;
+import com.evolution.settings.utils.OverlayPreviewRenderer;
+import com.evolution.settings.utils.OverlayResourcesPool;
+import com.evolution.settings.utils.OverlayStateCache;
+import com.evolution.settings.utils.OverlayTransaction;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -70,6 +77,9 @@ public class SignalIcons extends SettingsPreferenceFragment {
 
     private RecyclerView mRecyclerView;
     private ThemeUtils mThemeUtils;
+    private OverlayStateCache mOverlayState;
+    private OverlayPreviewRenderer mPreviews;
+    private int mPreviewSize;
     private String mCategory = "android.theme.customization.signal_icon";
 
     private List<String> mPkgs;
@@ -80,7 +90,11 @@ public class SignalIcons extends SettingsPreferenceFragment {
         getActivity().setTitle(R.string.theme_customization_signal_icon_title);
 
         mThemeUtils = new ThemeUtils(getActivity());
-        mPkgs = mThemeUtils.getOverlayPackagesForCategory(mCategory, "android");
+        mOverlayState = OverlayStateCache.get(getActivity());
+        mPreviews = OverlayPreviewRenderer.get(getActivity());
+        mPreviewSize = getResources().getDimensionPixelSize(R.dimen.theme_preview_icon_size);
+        mPkgs = OverlayCatalog.get(getActivity()).getPackages(mCategory, "android");
+        LabelCache.get(getActivity()).preload(mPkgs);
     }
 
     @Override
@@ -90,10 +104,8 @@ public class SignalIcons extends SettingsPreferenceFragment {
                 R.layout.item_view, container, false);
 
         mRecyclerView = (RecyclerView) view.findViewById(R.id.recycler_view);
-        GridLayoutManager gridLayoutManager = new GridLayoutManager(getActivity(), 3);
-        mRecyclerView.setLayoutManager(gridLayoutManager);
         Adapter mAdapter = new Adapter(getActivity());
-        mRecyclerView.setAdapter(mAdapter);
+        OverlayPickerAdapter.setUpGrid(mRecyclerView, 3, mAdapter);
 
         return view;
     }
@@ -108,12 +120,11 @@ public class SignalIcons extends SettingsPreferenceFragment {
         super.onResume();
     }
 
-    public class Adapter extends RecyclerView.Adapter<Adapter.CustomViewHolder> {
+    public class Adapter extends OverlayPickerAdapter<Adapter.CustomViewHolder> {
         Context context;
-        String mSelectedPkg;
-        String mAppliedPkg;
 
         public Adapter(Context context) {
+            super(mPkgs, mOverlayState.getEnabledPackage(mCategory, "android"));
             this.context = context;
         }
 
@@ -128,43 +139,25 @@ public class SignalIcons extends SettingsPreferenceFragment {
         public void onBindViewHolder(CustomViewHolder holder, final int position) {
             String iconPkg = mPkgs.get(position);
 
-            holder.image1.setBackgroundDrawable(getDrawable(holder.image1.getContext(), iconPkg, "ic_signal_cellular_0_5_bar"));
-            holder.image2.setBackgroundDrawable(getDrawable(holder.image2.getContext(), iconPkg, "ic_signal_cellular_1_5_bar"));
-            holder.image3.setBackgroundDrawable(getDrawable(holder.image3.getContext(), iconPkg, "ic_signal_cellular_3_5_bar"));
-            holder.image4.setBackgroundDrawable(getDrawable(holder.image4.getContext(), iconPkg, "ic_signal_cellular_5_5_bar"));
-
-            String currentPackageName = mThemeUtils.getOverlayInfos(mCategory).stream()
-                .filter(info -> info.isEnabled())
-                .map(info -> info.packageName)
-                .findFirst()
-                .orElse("android");
+            mPreviews.loadInto(holder.image1, iconPkg, "ic_signal_cellular_0_5_bar", mPreviewSize,
+                    () -> getDrawable(context, iconPkg, "ic_signal_cellular_0_5_bar"));
+            mPreviews.loadInto(holder.image2, iconPkg, "ic_signal_cellular_1_5_bar", mPreviewSize,
+                    () -> getDrawable(context, iconPkg, "ic_signal_cellular_1_5_bar"));
+            mPreviews.loadInto(holder.image3, iconPkg, "ic_signal_cellular_3_5_bar", mPreviewSize,
+                    () -> getDrawable(context, iconPkg, "ic_signal_cellular_3_5_bar"));
+            mPreviews.loadInto(holder.image4, iconPkg, "ic_signal_cellular_5_5_bar", mPreviewSize,
+                    () -> getDrawable(context, iconPkg, "ic_signal_cellular_5_5_bar"));
 
             holder.name.setText("android".equals(iconPkg) ? "Default" : getLabel(holder.name.getContext(), iconPkg));
 
-            if (currentPackageName.equals(iconPkg)) {
-                mAppliedPkg = iconPkg;
-                if (mSelectedPkg == null) {
-                    mSelectedPkg = iconPkg;
-                }
-            }
-
-            holder.itemView.setActivated(iconPkg == mSelectedPkg);
             holder.itemView.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    updateActivatedStatus(mSelectedPkg, false);
-                    updateActivatedStatus(iconPkg, true);
-                    mSelectedPkg = iconPkg;
-                    enableOverlays(position);
+                    applySelection(iconPkg, createTransaction(position));
                 }
             });
         }
 
-        @Override
-        public int getItemCount() {
-            return mPkgs.size();
-        }
-
         public class CustomViewHolder extends RecyclerView.ViewHolder {
             TextView name;
             ImageView image1;
@@ -180,26 +173,11 @@ public class SignalIcons extends SettingsPreferenceFragment {
                 image4 = (ImageView) itemView.findViewById(R.id.image4);
             }
         }
-
-        private void updateActivatedStatus(String pkg, boolean isActivated) {
-            int index = mPkgs.indexOf(pkg);
-            if (index < 0) {
-                return;
-            }
-            RecyclerView.ViewHolder holder = mRecyclerView.findViewHolderForAdapterPosition(index);
-            if (holder != null && holder.itemView != null) {
-                holder.itemView.setActivated(isActivated);
-            }
-        }
     }
 
     public Drawable getDrawable(Context context, String pkg, String drawableName) {
-        try {
-            PackageManager pm = context.getPackageManager();
-            Resources res = pkg.equals("android") ? Resources.getSystem()
-                    : pm.getResourcesForApplication(pkg);
-            int resId = res.getIdentifier(drawableName, "drawable", pkg);
-            return res.getDrawable(resId);
+        try (OverlayResourcesPool.Handle res = OverlayResourcesPool.get(context).acquire(pkg)) {
+            return res.getResources().getDrawable(res.getIdentifier(drawableName, "drawable"));
         }
         catch (PackageManager.NameNotFoundException e) {
             e.printStackTrace();
@@ -208,17 +186,11 @@ public class SignalIcons extends SettingsPreferenceFragment {
     }
 
     public String getLabel(Context context, String pkg) {
-        PackageManager pm = context.getPackageManager();
-        try {
-            return pm.getApplicationInfo(pkg, 0)
-                    .loadLabel(pm).toString();
-        } catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
-        }
-        return pkg;
+        return LabelCache.get(context).getLabel(pkg);
     }
 
-    public void enableOverlays(int position) {
-        mThemeUtils.setOverlayEnabled(mCategory, mPkgs.get(position), "android");
+    public OverlayTransaction createTransaction(int position) {
+        return new OverlayTransaction(getActivity(), mThemeUtils)
+                .setOverlayEnabled(mCategory, mPkgs.get(position), "android");
     }
 }
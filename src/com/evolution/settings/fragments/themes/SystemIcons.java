@@ -57,11 +57,17 @@ import com.android.settings.search.BaseSearchIndexProvider;
 import com.android.settingslib.search.Indexable;
 import com.android.settings.SettingsPreferenceFragment;
 
+import com.evolution.settings.utils.LabelCache;
+import com.evolution.settings.utils.OverlayCatalog;
+import com.evolution.settings.utils.OverlayPreviewRenderer;
+import com.evolution.settings.utils.OverlayResourcesPool;
+import com.evolution.settings.utils.OverlayStateCache;
+import com.evolution.settings.utils.OverlayTransaction;
+
 import com.bumptech.glide.Glide;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -73,6 +79,9 @@ public class SystemIcons extends SettingsPreferenceFragment {
 
     private RecyclerView mRecyclerView;
     private ThemeUtils mThemeUtils;
+    private OverlayStateCache mOverlayState;
+    private OverlayPreviewRenderer mPreviews;
+    private int mPreviewSize;
     private String mCategory = "android.theme.customization.icon_pack.android";
 
     private List<String> mPkgs;
@@ -91,8 +100,20 @@ public class SystemIcons extends SettingsPreferenceFragment {
         getActivity().setTitle(R.string.theme_customization_icon_pack_title);
 
         mThemeUtils = new ThemeUtils(getActivity());
-        mPkgs = mThemeUtils.getOverlayPackagesForCategory(mCategory, "android");
-        Collections.sort(mPkgs);
+        mOverlayState = OverlayStateCache.get(getActivity());
+        mPreviews = OverlayPreviewRenderer.get(getActivity());
+        mPreviewSize = getResources().getDimensionPixelSize(R.dimen.theme_preview_icon_size);
+        mPkgs = OverlayCatalog.get(getActivity()).getSortedPackages(mCategory, "android");
+        LabelCache.get(getActivity()).preload(mPkgs);
+
+        // Applying a pack looks up the matching overlay of every app, have
+        // those lists ready or loading by the time one is picked
+        final String[][] targets = new String[overlayMap.size()][];
+        int i = 0;
+        for (Map.Entry<String, String> entry : overlayMap.entrySet()) {
+            targets[i++] = new String[] { entry.getValue(), entry.getKey() };
+        }
+        OverlayCatalog.get(getActivity()).prefetch(targets);
     }
 
     @Override
@@ -102,10 +123,8 @@ public class SystemIcons extends SettingsPreferenceFragment {
                 R.layout.item_view, container, false);
 
         mRecyclerView = (RecyclerView) view.findViewById(R.id.recycler_view);
-        GridLayoutManager gridLayoutManager = new GridLayoutManager(getActivity(), 3);
-        mRecyclerView.setLayoutManager(gridLayoutManager);
         Adapter mAdapter = new Adapter(getActivity());
-        mRecyclerView.setAdapter(mAdapter);
+        OverlayPickerAdapter.setUpGrid(mRecyclerView, 3, mAdapter);
 
         return view;
     }
@@ -120,12 +139,11 @@ public class SystemIcons extends SettingsPreferenceFragment {
         super.onResume();
     }
 
-    public class Adapter extends RecyclerView.Adapter<Adapter.CustomViewHolder> {
+    public class Adapter extends OverlayPickerAdapter<Adapter.CustomViewHolder> {
         Context context;
-        String mSelectedPkg;
-        String mAppliedPkg;
 
         public Adapter(Context context) {
+            super(mPkgs, mOverlayState.getEnabledPackage(mCategory, "android"));
             this.context = context;
         }
 
@@ -140,43 +158,25 @@ public class SystemIcons extends SettingsPreferenceFragment {
         public void onBindViewHolder(CustomViewHolder holder, final int position) {
             String iconPkg = mPkgs.get(position);
 
-            holder.image1.setBackgroundDrawable(getDrawable(holder.image1.getContext(), iconPkg, "ic_wifi_signal_4"));
-            holder.image2.setBackgroundDrawable(getDrawable(holder.image2.getContext(), iconPkg, "ic_signal_cellular_4_4_bar"));
-            holder.image3.setBackgroundDrawable(getDrawable(holder.image3.getContext(), iconPkg, "ic_qs_airplane"));
-            holder.image4.setBackgroundDrawable(getDrawable(holder.image4.getContext(), iconPkg, "ic_qs_flashlight"));
-
-            String currentPackageName = mThemeUtils.getOverlayInfos(mCategory).stream()
-                .filter(info -> info.isEnabled())
-                .map(info -> info.packageName)
-                .findFirst()
-                .orElse("android");
+            mPreviews.loadInto(holder.image1, iconPkg, "ic_wifi_signal_4", mPreviewSize,
+                    () -> getDrawable(context, iconPkg, "ic_wifi_signal_4"));
+            mPreviews.loadInto(holder.image2, iconPkg, "ic_signal_cellular_4_4_bar", mPreviewSize,
+                    () -> getDrawable(context, iconPkg, "ic_signal_cellular_4_4_bar"));
+            mPreviews.loadInto(holder.image3, iconPkg, "ic_qs_airplane", mPreviewSize,
+                    () -> getDrawable(context, iconPkg, "ic_qs_airplane"));
+            mPreviews.loadInto(holder.image4, iconPkg, "ic_qs_flashlight", mPreviewSize,
+                    () -> getDrawable(context, iconPkg, "ic_qs_flashlight"));
 
             holder.name.setText("android".equals(iconPkg) ? "Default" : getLabel(holder.name.getContext(), iconPkg));
 
-            if (currentPackageName.equals(iconPkg)) {
-                mAppliedPkg = iconPkg;
-                if (mSelectedPkg == null) {
-                    mSelectedPkg = iconPkg;
-                }
-            }
-
-            holder.itemView.setActivated(iconPkg == mSelectedPkg);
             holder.itemView.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    updateActivatedStatus(mSelectedPkg, false);
-                    updateActivatedStatus(iconPkg, true);
-                    mSelectedPkg = iconPkg;
-                    enableOverlays(position);
+                    applySelection(iconPkg, createTransaction(position));
                 }
             });
         }
 
-        @Override
-        public int getItemCount() {
-            return mPkgs.size();
-        }
-
         public class CustomViewHolder extends RecyclerView.ViewHolder {
             TextView name;
             ImageView image1;
@@ -192,30 +192,19 @@ public class SystemIcons extends SettingsPreferenceFragment {
                 image4 = (ImageView) itemView.findViewById(R.id.image4);
             }
         }
-
-        private void updateActivatedStatus(String pkg, boolean isActivated) {
-            int index = mPkgs.indexOf(pkg);
-            if (index < 0) {
-                return;
-            }
-            RecyclerView.ViewHolder holder = mRecyclerView.findViewHolderForAdapterPosition(index);
-            if (holder != null && holder.itemView != null) {
-                holder.itemView.setActivated(isActivated);
-            }
-        }
     }
 
     public Drawable getDrawable(Context context, String pkg, String drawableName) {
-        try {
-            PackageManager pm = context.getPackageManager();
-            Resources res = pkg.equals("android") ? Resources.getSystem()
-                    : pm.getResourcesForApplication(pkg);
-            int resId = res.getIdentifier(drawableName, "drawable", pkg);
+        final OverlayResourcesPool pool = OverlayResourcesPool.get(context);
+        try (OverlayResourcesPool.Handle res = pool.acquire(pkg)) {
+            int resId = res.getIdentifier(drawableName, "drawable");
             if (resId == 0) {
-                return Resources.getSystem().getDrawable(
-                        Resources.getSystem().getIdentifier(drawableName, "drawable", "android"));
+                try (OverlayResourcesPool.Handle system = pool.acquire("android")) {
+                    return system.getResources().getDrawable(
+                            system.getIdentifier(drawableName, "drawable"));
+                }
             }
-            return res.getDrawable(resId);
+            return res.getResources().getDrawable(resId);
         }
         catch (PackageManager.NameNotFoundException e) {
             e.printStackTrace();
@@ -224,33 +213,29 @@ public class SystemIcons extends SettingsPreferenceFragment {
     }
 
     public String getLabel(Context context, String pkg) {
-        PackageManager pm = context.getPackageManager();
-        try {
-            return pm.getApplicationInfo(pkg, 0)
-                    .loadLabel(pm).toString();
-        } catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
-        }
-        return pkg;
+        return LabelCache.get(context).getLabel(pkg);
     }
 
-    public void enableOverlays(int position) {
-        mThemeUtils.setOverlayEnabled(mCategory, mPkgs.get(position), "android");
+    public OverlayTransaction createTransaction(int position) {
+        final OverlayTransaction transaction = new OverlayTransaction(getActivity(), mThemeUtils)
+                .setOverlayEnabled(mCategory, mPkgs.get(position), "android");
         String pattern = "android".equals(mPkgs.get(position)) ? ""
                 : mPkgs.get(position).split("\\.")[4];
         for (Map.Entry<String, String> entry : overlayMap.entrySet()) {
-            enableOverlay(entry.getValue(), entry.getKey(), pattern);
+            enableOverlay(transaction, entry.getValue(), entry.getKey(), pattern);
         }
+        return transaction;
     }
 
-    public void enableOverlay(String category, String target, String pattern) {
+    public void enableOverlay(OverlayTransaction transaction, String category, String target,
+            String pattern) {
         if (pattern.isEmpty()) {
-            mThemeUtils.setOverlayEnabled(category, "android", "android");
+            transaction.setOverlayEnabled(category, "android", "android");
             return;
         }
-        for (String pkg: mThemeUtils.getOverlayPackagesForCategory(category, target)) {
+        for (String pkg: OverlayCatalog.get(getActivity()).getPackages(category, target)) {
             if (pkg.contains(pattern)) {
-                mThemeUtils.setOverlayEnabled(category, pkg, target);
+                transaction.setOverlayEnabled(category, pkg, target);
             }
         }
     }
@@ -7,6 +7,8 @@ package com.evolution.settings.fragments.themes;
 
 import static android.os.UserHandle.USER_CURRENT;
 import static android.os.UserHandle.USER_SYSTEM;
+import static com.android.internal.util.evolution.ThemeUtils.FONT_KEY;
+import static com.android.internal.util.evolution.ThemeUtils.ICON_SHAPE_KEY;
 
 import android.app.Activity;
 import android.app.AlertDialog;
@@ -44,6 +46,7 @@ import com.android.settings.search.BaseSearchIndexProvider;
 import com.android.settingslib.search.SearchIndexable;
 
 import com.evolution.settings.preference.SystemSettingListPreference;
+import com.evolution.settings.utils.OverlayCatalog;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -56,6 +59,24 @@ public class Themes extends SettingsPreferenceFragment implements
 
     private static final String STATUS_BAR_SIGNAL_CATEGORY = "status_bar_signal_category";
 
+    // Overlay categories and targets of the pickers opened from here
+    private static final String[][] OVERLAY_CATEGORIES = {
+        { FONT_KEY, "android" },
+        { "android.theme.customization.lockscreen_clock_font", "android" },
+        { "android.theme.customization.navbar", "com.android.systemui" },
+        { "android.theme.customization.icon_pack.android", "android" },
+        { "android.theme.customization.icon_pack.settings", "com.android.settings" },
+        { "android.theme.customization.icon_pack.systemui", "com.android.systemui" },
+        { "android.theme.customization.icon_pack.launcher",
+                "com.google.android.apps.nexuslauncher" },
+        { "android.theme.customization.icon_pack.themepicker",
+                "com.google.android.apps.wallpaper" },
+        { ICON_SHAPE_KEY, "android" },
+        { "android.theme.customization.wifi_icon", "android" },
+        { "android.theme.customization.signal_icon", "android" },
+        { "android.customization.sb_data", "com.android.systemui" },
+    };
+
     private Handler mHandler;
     private IOverlayManager mOverlayManager;
     private IOverlayManager mOverlayService;
@@ -68,6 +89,8 @@ public class Themes extends SettingsPreferenceFragment implements
 
         addPreferencesFromResource(R.xml.evolution_settings_themes);
 
+        OverlayCatalog.get(getActivity()).prefetch(OVERLAY_CATEGORIES);
+
         Context mContext = getActivity().getApplicationContext();
         ContentResolver resolver = mContext.getContentResolver();
         final PreferenceScreen prefScreen = getPreferenceScreen();
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.preference;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.ArrayMap;
+
+import com.evolution.settings.preference.PackageListAdapter.PackageItem;
+import com.evolution.settings.utils.LabelCache;
+import com.evolution.settings.utils.PackageChangeMonitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide, sorted catalog of the apps the app pickers offer.
+ *
+ * The catalog is built once in the background and then kept up to date one
+ * package at a time from package broadcasts. Icons are not part of it, rows
+ * load them on demand through {@link AppIconLoader}. Listeners receive an immutable
+ * snapshot on the main thread, once per change.
+ */
+public class AppCatalog {
+
+    public interface Listener {
+        void onAppCatalogChanged(List<PackageItem> apps);
+    }
+
+    // Packages which don't have launcher icons, but which we want to show nevertheless
+    private static final String[] PACKAGE_WHITELIST = new String[] {
+        "android",                          /* system server */
+        "com.android.systemui",             /* system UI */
+        "com.android.providers.downloads"   /* download provider */
+    };
+
+    private static AppCatalog sInstance;
+
+    private final PackageManager mPm;
+    private final LabelCache mLabels;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // Only touched on mExecutor, sorted by PackageItem order
+    private final ArrayList<PackageItem> mApps = new ArrayList<>();
+    private final ArrayMap<String, PackageItem> mAppsByPackage = new ArrayMap<>();
+
+    // Only touched on the main thread
+    private final Set<Listener> mListeners = Collections.newSetFromMap(new WeakHashMap<>());
+    private List<PackageItem> mSnapshot;
+
+    private AppCatalog(Context context) {
+        mPm = context.getPackageManager();
+        mLabels = LabelCache.get(context);
+
+        PackageChangeMonitor.get(context).addPackageListener(this::onPackageChanged);
+
+        mExecutor.execute(() -> {
+            build();
+            publish();
+        });
+    }
+
+    public static synchronized AppCatalog get(Context context) {
+        if (sInstance == null) {
+            sInstance = new AppCatalog(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Registers a listener, which is called right away if the catalog is
+     * already built. Listeners are weakly referenced. Main thread only.
+     */
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+        if (mSnapshot != null) {
+            listener.onAppCatalogChanged(mSnapshot);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    private void onPackageChanged(String packageName, Intent intent) {
+        if (Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction())
+                && intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) {
+            // An update is followed by ACTION_PACKAGE_ADDED
+            return;
+        }
+        mExecutor.execute(() -> {
+            if (updatePackage(packageName)) {
+                publish();
+            }
+        });
+    }
+
+    private void build() {
+        final Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
+        mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        for (ResolveInfo info : mPm.queryIntentActivities(mainIntent, 0)) {
+            addActivity(info);
+        }
+        for (String packageName : PACKAGE_WHITELIST) {
+            if (!mAppsByPackage.containsKey(packageName)) {
+                addWhitelisted(packageName);
+            }
+        }
+        mApps.ensureCapacity(mAppsByPackage.size());
+        mApps.addAll(mAppsByPackage.values());
+        Collections.sort(mApps);
+    }
+
+    /**
+     * Rescans a single package. Returns whether the catalog changed.
+     */
+    private boolean updatePackage(String packageName) {
+        mLabels.invalidate(packageName);
+        final PackageItem old = mAppsByPackage.remove(packageName);
+        if (old != null) {
+            mApps.remove(Collections.binarySearch(mApps, old));
+        }
+
+        final Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
+        mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        mainIntent.setPackage(packageName);
+        for (ResolveInfo info : mPm.queryIntentActivities(mainIntent, 0)) {
+            addActivity(info);
+        }
+        if (!mAppsByPackage.containsKey(packageName)) {
+            for (String whitelisted : PACKAGE_WHITELIST) {
+                if (whitelisted.equals(packageName)) {
+                    addWhitelisted(packageName);
+                }
+            }
+        }
+
+        final PackageItem item = mAppsByPackage.get(packageName);
+        if (item != null) {
+            mApps.add(-Collections.binarySearch(mApps, item) - 1, item);
+        }
+        return old != null || item != null;
+    }
+
+    private void addActivity(ResolveInfo info) {
+        final ApplicationInfo appInfo = info.activityInfo.applicationInfo;
+        PackageItem item = mAppsByPackage.get(appInfo.packageName);
+        if (item == null) {
+            item = new PackageItem(appInfo.packageName, mLabels.getLabel(appInfo));
+            mAppsByPackage.put(appInfo.packageName, item);
+        }
+        item.activityTitles.add(info.loadLabel(mPm));
+    }
+
+    private void addWhitelisted(String packageName) {
+        try {
+            ApplicationInfo appInfo = mPm.getApplicationInfo(packageName, 0);
+            mAppsByPackage.put(packageName,
+                    new PackageItem(appInfo.packageName, mLabels.getLabel(appInfo)));
+        } catch (PackageManager.NameNotFoundException ignored) {
+            // package not present, so nothing to add -> ignore it
+        }
+    }
+
+    private void publish() {
+        final List<PackageItem> snapshot = Collections.unmodifiableList(new ArrayList<>(mApps));
+        mHandler.post(() -> {
+            mSnapshot = snapshot;
+            for (Listener listener : new ArrayList<>(mListeners)) {
+                listener.onAppCatalogChanged(snapshot);
+            }
+        });
+    }
+}
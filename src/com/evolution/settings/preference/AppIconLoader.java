@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.preference;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.android.settings.R;
+import com.evolution.settings.utils.PackageChangeMonitor;
+import com.evolution.settings.utils.VersionedDiskCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads app icons for the app pickers on demand.
+ *
+ * Icons are rendered once at the list row size and kept in a memory LRU
+ * bounded by bytes. Each rendered icon is also saved as a small PNG in the
+ * app cache, keyed by package version and icon shape, so reopening a picker
+ * doesn't load the full size icons again.
+ */
+public class AppIconLoader {
+
+    private static final String TAG = "AppIconLoader";
+
+    private static final String CACHE_DIR = "app_icons";
+
+    private static final int MAX_MEMORY_BYTES = 4 * 1024 * 1024;
+
+    // What follows the version in a cache entry name: icon mask hash
+    // (missing from older entries) and size
+    private static final String ENTRY = "([0-9a-f]+_)?\\d+\\.png";
+
+    public interface Callback {
+        void onIconLoaded(Drawable icon);
+    }
+
+    private static AppIconLoader sInstance;
+
+    private final PackageManager mPm;
+    private final Resources mResources;
+    private final int mIconSize;
+    private final VersionedDiskCache mDiskCache;
+    private final Drawable mPlaceholder;
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(2);
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final LruCache<String, Bitmap> mMemoryCache;
+
+    // Only touched on the main thread
+    private final ArrayMap<String, ArrayList<Callback>> mPending = new ArrayMap<>();
+    private final WeakHashMap<ImageView, String> mBindings = new WeakHashMap<>();
+
+    private AppIconLoader(Context context) {
+        mPm = context.getPackageManager();
+        mResources = context.getResources();
+        mIconSize = mResources.getDimensionPixelSize(R.dimen.app_list_icon_size);
+        mDiskCache = new VersionedDiskCache(context, CACHE_DIR, ENTRY);
+        mPlaceholder = mPm.getDefaultActivityIcon();
+
+        final int maxBytes = (int) Math.min(MAX_MEMORY_BYTES, Runtime.getRuntime().maxMemory() / 32);
+        mMemoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+
+        final PackageChangeMonitor monitor = PackageChangeMonitor.get(context);
+        // The disk entry is keyed by version and goes stale by itself
+        monitor.addPackageListener((pkg, intent) -> mMemoryCache.remove(pkg));
+        // The icon shape may have changed, the disk entries are keyed by it
+        monitor.addOverlayListener((pkg, intent) -> mMemoryCache.evictAll());
+    }
+
+    public static synchronized AppIconLoader get(Context context) {
+        if (sInstance == null) {
+            sInstance = new AppIconLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Shows the icon of the package in view, replacing any icon the view
+     * was bound to before. Main thread only.
+     */
+    public void loadInto(ImageView view, String packageName) {
+        mBindings.put(view, packageName);
+        load(packageName, icon -> {
+            if (packageName.equals(mBindings.get(view))) {
+                view.setImageDrawable(icon);
+            }
+        });
+    }
+
+    /**
+     * Delivers the icon of the package to callback on the main thread. If the
+     * icon is in memory the callback runs before this returns, otherwise it
+     * first receives a placeholder. Main thread only.
+     */
+    public void load(String packageName, Callback callback) {
+        final Bitmap cached = mMemoryCache.get(packageName);
+        if (cached != null) {
+            callback.onIconLoaded(new BitmapDrawable(mResources, cached));
+            return;
+        }
+        callback.onIconLoaded(mPlaceholder);
+
+        ArrayList<Callback> callbacks = mPending.get(packageName);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            return;
+        }
+        callbacks = new ArrayList<>();
+        callbacks.add(callback);
+        mPending.put(packageName, callbacks);
+
+        mExecutor.execute(() -> {
+            final Bitmap icon = loadIcon(packageName);
+            mHandler.post(() -> {
+                final ArrayList<Callback> waiting = mPending.remove(packageName);
+                if (icon == null || waiting == null) {
+                    return;
+                }
+                mMemoryCache.put(packageName, icon);
+                for (Callback c : waiting) {
+                    c.onIconLoaded(new BitmapDrawable(mResources, icon));
+                }
+            });
+        });
+    }
+
+    private Bitmap loadIcon(String packageName) {
+        final PackageInfo info;
+        try {
+            info = mPm.getPackageInfo(packageName, 0);
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+
+        // Adaptive icons are drawn with the system icon mask, which the icon
+        // shape overlays change
+        final String version = VersionedDiskCache.getVersion(info);
+        final File file = mDiskCache.getFile(packageName, version,
+                getIconMaskHash() + "_" + mIconSize + ".png");
+        Bitmap icon = BitmapFactory.decodeFile(file.getPath());
+        if (icon != null) {
+            return icon;
+        }
+
+        final Drawable drawable = info.applicationInfo.loadIcon(mPm);
+        icon = Bitmap.createBitmap(mIconSize, mIconSize, Bitmap.Config.ARGB_8888);
+        drawable.setBounds(0, 0, mIconSize, mIconSize);
+        drawable.draw(new Canvas(icon));
+
+        mDiskCache.prepareWrite(packageName, version);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            icon.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to cache icon of " + packageName, e);
+        }
+        return icon;
+    }
+
+    private String getIconMaskHash() {
+        return Integer.toHexString(mResources.getString(
+                com.android.internal.R.string.config_icon_mask).hashCode());
+    }
+}
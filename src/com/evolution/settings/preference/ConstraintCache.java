@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.preference;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import com.evolution.settings.utils.PackageChangeMonitor;
+
+import java.io.PrintWriter;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Process-wide memo table of constraint results.
+ *
+ * Package, action, intent and feature checks only change when packages are
+ * installed, removed or changed, or when the configuration or locale changes,
+ * so their results are kept until one of those broadcasts arrives.
+ */
+public final class ConstraintCache {
+
+    private static final String TAG = "ConstraintCache";
+
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    static final String PREFIX_PACKAGE = "package:";
+    static final String PREFIX_ACTION = "action:";
+    static final String PREFIX_INTENT = "intent:";
+    static final String PREFIX_FEATURE = "feature:";
+
+    private static ConstraintCache sInstance;
+
+    // Guarded by "this"
+    private final ArrayMap<String, Boolean> mResults = new ArrayMap<>();
+    private int mGeneration;
+    private long mHits;
+    private long mMisses;
+    private long mInvalidations;
+
+    private final BroadcastReceiver mInvalidator = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (DEBUG) Log.d(TAG, "invalidate on " + intent.getAction());
+            invalidate();
+        }
+    };
+
+    private ConstraintCache(Context context) {
+        PackageChangeMonitor.get(context).addPackageListener((pkg, intent) -> {
+            if (DEBUG) Log.d(TAG, "invalidate on " + intent.getAction());
+            invalidate();
+        });
+
+        final IntentFilter configFilter = new IntentFilter();
+        configFilter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        configFilter.addAction(Intent.ACTION_CONFIGURATION_CHANGED);
+        context.registerReceiver(mInvalidator, configFilter, Context.RECEIVER_NOT_EXPORTED);
+    }
+
+    public static synchronized ConstraintCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ConstraintCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the memoized result for key, running check on a miss.
+     */
+    boolean check(String key, BooleanSupplier check) {
+        final int generation;
+        synchronized (this) {
+            final Boolean result = mResults.get(key);
+            if (result != null) {
+                mHits++;
+                return result;
+            }
+            mMisses++;
+            generation = mGeneration;
+        }
+        final boolean result = check.getAsBoolean();
+        synchronized (this) {
+            // Drop results computed against state that has since changed
+            if (generation == mGeneration) {
+                mResults.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the memoized result for key, or null if there is none.
+     */
+    synchronized Boolean peek(String key) {
+        final Boolean result = mResults.get(key);
+        if (result != null) {
+            mHits++;
+        }
+        return result;
+    }
+
+    public synchronized void invalidate() {
+        mResults.clear();
+        mGeneration++;
+        mInvalidations++;
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    public synchronized void dump(String prefix, PrintWriter pw) {
+        pw.print(prefix); pw.println(TAG + ":");
+        pw.print(prefix); pw.print("  entries="); pw.print(mResults.size());
+        pw.print(" hits="); pw.print(mHits);
+        pw.print(" misses="); pw.print(mMisses);
+        pw.print(" invalidations="); pw.println(mInvalidations);
+        for (int i = 0; i < mResults.size(); i++) {
+            pw.print(prefix); pw.print("    "); pw.print(mResults.keyAt(i));
+            pw.print(" -> "); pw.println(mResults.valueAt(i));
+        }
+    }
+}
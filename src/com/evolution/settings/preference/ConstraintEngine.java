@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.preference;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.preference.PreferenceManager;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Evaluates the constraints of a screen's preferences as one batch.
+ *
+ * Preferences are collected per PreferenceManager as they are attached,
+ * which happens in one pass when the fragment sets its screen. Right after
+ * that pass, the checks already memoized are answered on the main thread,
+ * before the screen is first laid out. The others run together as one
+ * background task. Visibility is applied once per screen, with a single reap,
+ * when the whole batch is known.
+ */
+final class ConstraintEngine {
+
+    private static final String TAG = "ConstraintEngine";
+
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    private static final int THREADS =
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    private static final ExecutorService sExecutor = Executors.newFixedThreadPool(THREADS,
+            r -> new Thread(r, TAG));
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    // Only touched on the main thread: preferences attached since the last
+    // flush, per screen
+    private static final ArrayMap<PreferenceManager, ArrayList<ConstraintsHelper>> sBatches =
+            new ArrayMap<>();
+
+    private static final Runnable sFlush = ConstraintEngine::flush;
+
+    private ConstraintEngine() {
+    }
+
+    /**
+     * Adds helper to the batch of its screen, evaluated once the current
+     * attach pass is over. Main thread only.
+     */
+    static void enqueue(PreferenceManager mgr, ConstraintsHelper helper) {
+        ArrayList<ConstraintsHelper> batch = sBatches.get(mgr);
+        if (batch == null) {
+            if (sBatches.isEmpty()) {
+                sMainHandler.post(sFlush);
+            }
+            batch = new ArrayList<>();
+            sBatches.put(mgr, batch);
+        }
+        batch.add(helper);
+    }
+
+    private static void flush() {
+        for (int i = 0; i < sBatches.size(); i++) {
+            evaluate(sBatches.keyAt(i), sBatches.valueAt(i));
+        }
+        sBatches.clear();
+    }
+
+    private static void evaluate(PreferenceManager mgr, ArrayList<ConstraintsHelper> batch) {
+        final ArrayList<ConstraintsHelper> pending = new ArrayList<>();
+        final ArrayList<Boolean> known = new ArrayList<>();
+        for (ConstraintsHelper helper : batch) {
+            final Boolean available = helper.peekConstraints();
+            if (available == null) {
+                pending.add(helper);
+            }
+            known.add(available);
+        }
+        if (DEBUG) Log.d(TAG, "batch of " + batch.size() + ", " + pending.size()
+                + " evaluated in the background");
+
+        if (pending.isEmpty()) {
+            apply(mgr, batch, known);
+            return;
+        }
+        sExecutor.execute(() -> {
+            final ArrayList<Boolean> results = new ArrayList<>();
+            for (ConstraintsHelper helper : pending) {
+                boolean available;
+                try {
+                    available = helper.checkConstraints();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Constraint check failed, treating as unavailable", e);
+                    available = false;
+                }
+                results.add(available);
+            }
+            sMainHandler.post(() -> {
+                int next = 0;
+                for (int i = 0; i < known.size(); i++) {
+                    if (known.get(i) == null) {
+                        known.set(i, results.get(next++));
+                    }
+                }
+                apply(mgr, batch, known);
+            });
+        });
+    }
+
+    private static void apply(PreferenceManager mgr, ArrayList<ConstraintsHelper> batch,
+            ArrayList<Boolean> results) {
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).onEvaluated(results.get(i));
+        }
+        // One reap hides everything the batch ruled out
+        batch.get(0).reap(mgr);
+    }
+}
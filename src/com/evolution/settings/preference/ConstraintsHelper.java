@@ -26,6 +26,7 @@ import android.content.res.TypedArray;
 import android.os.SystemProperties;
 import android.os.UserHandle;
 import android.telephony.TelephonyManager;
+import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -35,12 +36,15 @@ import android.widget.TextView;
 import androidx.preference.Preference;
 import androidx.preference.PreferenceGroup;
 import androidx.preference.PreferenceManager;
+import androidx.preference.PreferenceScreen;
 import androidx.preference.PreferenceViewHolder;
 
+import java.lang.ref.WeakReference;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.BooleanSupplier;
 
 import com.android.internal.custom.hardware.LineageHardwareManager;
 
@@ -71,6 +75,17 @@ public class ConstraintsHelper {
 
     private String[] mReplacesKey = null;
 
+    private String mRequiresPackage;
+
+    private String mRequiresAction;
+
+    private String mRequiresFeature;
+
+    private String mRequiresProperty;
+
+    // Read on attach, checked with the other deferred constraints
+    private Intent mIntent;
+
     public ConstraintsHelper(Context context, AttributeSet attrs, Preference pref) {
         mContext = context;
         mAttrs = attrs;
@@ -83,9 +98,14 @@ public class ConstraintsHelper {
         if (replacesKey != null) {
             mReplacesKey = replacesKey.split("\\|");
         }
-        setAvailable(checkConstraints());
+        a.recycle();
+
+        // The constraints needing system services are batched per screen on attach
+        if (!checkLocalConstraints()) {
+            setAvailable(false);
+        }
 
-        Log.d(TAG, "construct key=" + mPref.getKey() + " available=" + mAvailable);
+        if (DEBUG) Log.d(TAG, "construct key=" + mPref.getKey() + " available=" + mAvailable);
     }
 
     public void setAvailable(boolean available) {
@@ -103,39 +123,52 @@ public class ConstraintsHelper {
         mVerifyIntent = verifyIntent;
     }
 
-    private PreferenceGroup getParent(Preference preference) {
-        return getParent(mPref.getPreferenceManager().getPreferenceScreen(), preference);
-    }
-
-    private PreferenceGroup getParent(PreferenceGroup root, Preference preference) {
-        for (int i = 0; i < root.getPreferenceCount(); i++) {
-            Preference p = root.getPreference(i);
-            if (p == preference)
-                return root;
-            if (PreferenceGroup.class.isInstance(p)) {
-                PreferenceGroup parent = getParent((PreferenceGroup) p, preference);
-                if (parent != null)
-                    return parent;
-            }
-        }
-        return null;
+    PreferenceManager getPreferenceManager() {
+        return mPref.getPreferenceManager();
     }
 
     private boolean isNegated(String key) {
         return key != null && key.startsWith("!");
     }
 
-    private void checkIntent() {
-        Intent i = mPref.getIntent();
-        if (i != null) {
-            if (!resolveIntent(mContext, i)) {
-                Graveyard.get(mContext).addTombstone(mPref.getKey());
-                mAvailable = false;
-            }
+    /**
+     * Called on the main thread with the outcome of the deferred constraints.
+     */
+    void onEvaluated(boolean available) {
+        if (!available && mAvailable) {
+            setAvailable(false);
+        }
+        if (mAvailable && mReplacesKey != null) {
+            Graveyard.get(mContext).addTombstones(mReplacesKey);
         }
+        if (DEBUG) Log.d(TAG, "evaluated key=" + mPref.getKey() + " available=" + mAvailable);
+    }
+
+    void reap(PreferenceManager mgr) {
+        Graveyard.get(mContext).reap(mgr);
+    }
+
+    /**
+     * Returns whether the preference is available if every deferred
+     * constraint is memoized already, or null if some need evaluating.
+     * Main thread only.
+     */
+    Boolean peekConstraints() {
+        return mAvailable ? checkDeferredConstraints(true) : Boolean.FALSE;
+    }
+
+    /**
+     * Evaluates the deferred constraints. Runs on the ConstraintEngine pool.
+     */
+    boolean checkConstraints() {
+        return checkDeferredConstraints(false);
     }
 
-    private boolean checkConstraints() {
+    /**
+     * Checks the constraints that can be answered without binder calls and
+     * records the others for {@link #checkDeferredConstraints}.
+     */
+    private boolean checkLocalConstraints() {
         if (mAttrs == null) {
             return true;
         }
@@ -151,61 +184,15 @@ public class ConstraintsHelper {
                 return false;
             }
 
-            // Check if a specific package is installed
-            String rPackage = a.getString(R.styleable.lineage_SelfRemovingPreference_requiresPackage);
-            if (rPackage != null) {
-                boolean negated = isNegated(rPackage);
-                if (negated) {
-                    rPackage = rPackage.substring(1);
-                }
-                boolean available = isPackageInstalled(mContext, rPackage, false);
-                if (available == negated) {
-                    return false;
-                }
-            }
-
-            // Check if an intent can be resolved to handle the given action
-            String rAction = a.getString(R.styleable.lineage_SelfRemovingPreference_requiresAction);
-            if (rAction != null) {
-                boolean negated = isNegated(rAction);
-                if (negated) {
-                    rAction = rAction.substring(1);
-                }
-                boolean available = resolveIntent(mContext, rAction);
-                if (available == negated) {
-                    return false;
-                }
-            }
-
-            // Check if a system feature is available
-            String rFeature = a.getString(R.styleable.lineage_SelfRemovingPreference_requiresFeature);
-            if (rFeature != null) {
-                boolean negated = isNegated(rFeature);
-                if (negated) {
-                    rFeature = rFeature.substring(1);
-                }
-                boolean available = rFeature.startsWith("lineagehardware:") ?
-                        LineageHardwareManager.getInstance(mContext).isSupported(
-                                rFeature.substring("lineagehardware:".length())) :
-                        hasSystemFeature(mContext, rFeature);
-                if (available == negated) {
-                    return false;
-                }
-            }
-
-            // Check a boolean system property
-            String rProperty = a.getString(R.styleable.lineage_SelfRemovingPreference_requiresProperty);
-            if (rProperty != null) {
-                boolean negated = isNegated(rProperty);
-                if (negated) {
-                    rProperty = rProperty.substring(1);
-                }
-                String value = SystemProperties.get(rProperty);
-                boolean available = value != null && Boolean.parseBoolean(value);
-                if (available == negated) {
-                    return false;
-                }
-            }
+            // Package, action, feature and property checks are deferred
+            mRequiresPackage = a.getString(
+                    R.styleable.lineage_SelfRemovingPreference_requiresPackage);
+            mRequiresAction = a.getString(
+                    R.styleable.lineage_SelfRemovingPreference_requiresAction);
+            mRequiresFeature = a.getString(
+                    R.styleable.lineage_SelfRemovingPreference_requiresFeature);
+            mRequiresProperty = a.getString(
+                    R.styleable.lineage_SelfRemovingPreference_requiresProperty);
 
             // Check a config resource. This can be a bool, string or integer.
             // The preference is removed if any of the following are true:
@@ -236,6 +223,106 @@ public class ConstraintsHelper {
         return true;
     }
 
+    /**
+     * Checks the constraints that need system services, only from the
+     * ConstraintCache if cachedOnly is set. Returns null if a result isn't
+     * memoized then.
+     */
+    private Boolean checkDeferredConstraints(boolean cachedOnly) {
+        final ConstraintCache cache = ConstraintCache.get(mContext);
+
+        // Check if a specific package is installed
+        String rPackage = mRequiresPackage;
+        if (rPackage != null) {
+            boolean negated = isNegated(rPackage);
+            if (negated) {
+                rPackage = rPackage.substring(1);
+            }
+            final String pkg = rPackage;
+            final Boolean available = check(cache, cachedOnly,
+                    ConstraintCache.PREFIX_PACKAGE + pkg,
+                    () -> isPackageInstalled(mContext, pkg, false));
+            if (available == null) {
+                return null;
+            }
+            if (available == negated) {
+                return false;
+            }
+        }
+
+        // Check if an intent can be resolved to handle the given action
+        String rAction = mRequiresAction;
+        if (rAction != null) {
+            boolean negated = isNegated(rAction);
+            if (negated) {
+                rAction = rAction.substring(1);
+            }
+            final String action = rAction;
+            final Boolean available = check(cache, cachedOnly,
+                    ConstraintCache.PREFIX_ACTION + action, () -> resolveIntent(mContext, action));
+            if (available == null) {
+                return null;
+            }
+            if (available == negated) {
+                return false;
+            }
+        }
+
+        // Check if a system feature is available
+        String rFeature = mRequiresFeature;
+        if (rFeature != null) {
+            boolean negated = isNegated(rFeature);
+            if (negated) {
+                rFeature = rFeature.substring(1);
+            }
+            final String feature = rFeature;
+            final Boolean available = check(cache, cachedOnly,
+                    ConstraintCache.PREFIX_FEATURE + feature,
+                    () -> feature.startsWith("lineagehardware:") ?
+                            LineageHardwareManager.getInstance(mContext).isSupported(
+                                    feature.substring("lineagehardware:".length())) :
+                            hasSystemFeature(mContext, feature));
+            if (available == null) {
+                return null;
+            }
+            if (available == negated) {
+                return false;
+            }
+        }
+
+        // Check a boolean system property
+        String rProperty = mRequiresProperty;
+        if (rProperty != null) {
+            boolean negated = isNegated(rProperty);
+            if (negated) {
+                rProperty = rProperty.substring(1);
+            }
+            String value = SystemProperties.get(rProperty);
+            boolean available = value != null && Boolean.parseBoolean(value);
+            if (available == negated) {
+                return false;
+            }
+        }
+
+        // Check the intent resolves to a system activity
+        final Intent intent = mIntent;
+        if (intent != null) {
+            final Boolean available = check(cache, cachedOnly,
+                    ConstraintCache.PREFIX_INTENT + intent.toUri(0),
+                    () -> resolveIntent(mContext, intent));
+            if (available == null || !available) {
+                return available;
+            }
+        }
+
+        return true;
+    }
+
+    private static Boolean check(ConstraintCache cache, boolean cachedOnly, String key,
+            BooleanSupplier check) {
+        return cachedOnly ? cache.peek(key) : cache.check(key, check);
+    }
+
     /**
      * Returns whether the device supports a particular feature
      */
@@ -307,13 +394,11 @@ public class ConstraintsHelper {
     }
 
     public void onAttached() {
-        checkIntent();
-
-        if (isAvailable() && mReplacesKey != null) {
-            Graveyard.get(mContext).addTombstones(mReplacesKey);
+        mIntent = mPref.getIntent();
+        final PreferenceManager mgr = getPreferenceManager();
+        if (mgr != null) {
+            ConstraintEngine.enqueue(mgr, this);
         }
-
-        Graveyard.get(mContext).summonReaper(mPref.getPreferenceManager());
     }
 
     public void onBindViewHolder(PreferenceViewHolder holder) {
@@ -334,24 +419,35 @@ public class ConstraintsHelper {
      * collate all the preferences that need to be removed when attached to the
      * hierarchy, then purge them all when loading is complete. The Graveyard keeps track
      * of this, and will reap the dead when onAttached is called.
+     *
+     * There is one Graveyard per inflation context, which PreferenceFragmentCompat
+     * creates per fragment, so tombstones never leak into other screens and are
+     * collected together with them. The ConstraintEngine reaps a screen once per
+     * batch of evaluated preferences, in a single pass over a key index of it.
      */
     private static class Graveyard {
 
-        private Set<String> mDeathRow = new ArraySet<>();
+        private static final WeakHashMap<Context, Graveyard> sGraveyards = new WeakHashMap<>();
 
-        private static Graveyard sInstance;
+        private final ArraySet<String> mDeathRow = new ArraySet<>();
 
-        private final Context mContext;
+        // Key index of the last reaped screen, parents are one getParent() away.
+        // Weakly held, as the preferences keep our inflation context alive.
+        private final ArrayMap<String, WeakReference<Preference>> mIndex = new ArrayMap<>();
+        private WeakReference<PreferenceScreen> mIndexedScreen;
 
-        private Graveyard(Context context) {
-            mContext = context;
+        private Graveyard() {
         }
 
-        public synchronized static Graveyard get(Context context) {
-            if (sInstance == null) {
-                sInstance = new Graveyard(context);
+        public static Graveyard get(Context context) {
+            synchronized (sGraveyards) {
+                Graveyard graveyard = sGraveyards.get(context);
+                if (graveyard == null) {
+                    graveyard = new Graveyard();
+                    sGraveyards.put(context, graveyard);
+                }
+                return graveyard;
             }
-            return sInstance;
         }
 
         public void addTombstone(String pref) {
@@ -366,53 +462,65 @@ public class ConstraintsHelper {
             }
         }
 
-        private PreferenceGroup getParent(Preference p1, Preference p2) {
-            return getParent(p1.getPreferenceManager().getPreferenceScreen(), p2);
-        }
-
-        private PreferenceGroup getParent(PreferenceGroup root, Preference preference) {
-            for (int i = 0; i < root.getPreferenceCount(); i++) {
-                Preference p = root.getPreference(i);
-                if (p == preference)
-                    return root;
-                if (PreferenceGroup.class.isInstance(p)) {
-                    PreferenceGroup parent = getParent((PreferenceGroup) p, preference);
-                    if (parent != null)
-                        return parent;
+        /**
+         * Hides every preference of the screen that is on death row.
+         */
+        public void reap(PreferenceManager mgr) {
+            final PreferenceScreen screen = mgr.getPreferenceScreen();
+            if (screen == null) {
+                return;
+            }
+            synchronized (mDeathRow) {
+                if (mDeathRow.isEmpty()) {
+                    return;
+                }
+                if (mIndexedScreen == null || mIndexedScreen.get() != screen
+                        || !mIndex.containsAll(mDeathRow)) {
+                    // Preferences were added since the last pass, index them again
+                    mIndex.clear();
+                    index(screen);
+                    mIndexedScreen = new WeakReference<>(screen);
+                }
+                final ArraySet<PreferenceGroup> groups = new ArraySet<>();
+                for (int i = mDeathRow.size() - 1; i >= 0; i--) {
+                    final WeakReference<Preference> ref = mIndex.get(mDeathRow.valueAt(i));
+                    final Preference deadPref = ref != null ? ref.get() : null;
+                    if (deadPref == null) {
+                        // Not inflated yet
+                        continue;
+                    }
+                    deadPref.setVisible(false);
+                    if (deadPref.getParent() != null) {
+                        groups.add(deadPref.getParent());
+                    }
+                    mDeathRow.removeAt(i);
+                }
+                for (PreferenceGroup group : groups) {
+                    hideIfEmpty(group);
                 }
             }
-            return null;
         }
 
-        private void hidePreference(PreferenceManager mgr, Preference pref) {
-            pref.setVisible(false);
-            // Hide the group if nothing is visible
-            final PreferenceGroup group = getParent(pref, pref);
-            boolean allHidden = true;
+        private void index(PreferenceGroup group) {
             for (int i = 0; i < group.getPreferenceCount(); i++) {
-                if (group.getPreference(i).isVisible()) {
-                    allHidden = false;
-                    break;
+                final Preference p = group.getPreference(i);
+                if (p.getKey() != null) {
+                    mIndex.put(p.getKey(), new WeakReference<>(p));
+                }
+                if (p instanceof PreferenceGroup) {
+                    index((PreferenceGroup) p);
                 }
-            }
-            if (allHidden) {
-                group.setVisible(false);
             }
         }
 
-        public void summonReaper(PreferenceManager mgr) {
-            synchronized (mDeathRow) {
-                Set<String> notReadyForReap = new ArraySet<>();
-                for (String dead : mDeathRow) {
-                    Preference deadPref = mgr.findPreference(dead);
-                    if (deadPref != null) {
-                        hidePreference(mgr, deadPref);
-                    } else {
-                        notReadyForReap.add(dead);
-                    }
+        // Hide the group if nothing is visible
+        private void hideIfEmpty(PreferenceGroup group) {
+            for (int i = 0; i < group.getPreferenceCount(); i++) {
+                if (group.getPreference(i).isVisible()) {
+                    return;
                 }
-                mDeathRow = notReadyForReap;
             }
+            group.setVisible(false);
         }
     }
 }
@@ -24,16 +24,16 @@ public class CustomSecureSeekBarPreference extends CustomSeekBarPreference {
 
     public CustomSecureSeekBarPreference(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
-        setPreferenceDataStore(new SecureSettingsStore(context.getContentResolver()));
+        setPreferenceDataStore(new SecureSettingsStore(context, mWriteBehindWindow));
     }
 
     public CustomSecureSeekBarPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
-        setPreferenceDataStore(new SecureSettingsStore(context.getContentResolver()));
+        setPreferenceDataStore(new SecureSettingsStore(context, mWriteBehindWindow));
     }
 
     public CustomSecureSeekBarPreference(Context context) {
         super(context, null);
-        setPreferenceDataStore(new SecureSettingsStore(context.getContentResolver()));
+        setPreferenceDataStore(new SecureSettingsStore(context, mWriteBehindWindow));
     }
 }
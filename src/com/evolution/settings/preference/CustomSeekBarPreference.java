@@ -18,6 +18,7 @@ package com.evolution.settings.preference;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.PorterDuff;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
@@ -43,6 +44,9 @@ public class CustomSeekBarPreference extends Preference implements SeekBar.OnSee
     protected boolean mShowSign = false;
     protected String mUnits = "";
     protected boolean mContinuousUpdates = false;
+    protected int mWriteBehindWindow = 0;
+    protected int mPersistInterval = 0;
+    protected boolean mPersistTrailing = true;
 
     protected int mMinValue = 0;
     protected int mMaxValue = 100;
@@ -62,6 +66,11 @@ public class CustomSeekBarPreference extends Preference implements SeekBar.OnSee
     protected boolean mTrackingTouch = false;
     protected int mTrackingValue;
 
+    // Rate limited persistence while dragging, see persistInterval
+    private int mPersistedValue;
+    private long mLastPersistTime;
+    private final Runnable mTrailingPersist = () -> persistValue(mValue);
+
     public CustomSeekBarPreference(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes) {
         super(context, attrs, defStyleAttr, defStyleRes);
 
@@ -72,6 +81,9 @@ public class CustomSeekBarPreference extends Preference implements SeekBar.OnSee
             if (units != null)
                 mUnits = " " + units;
             mContinuousUpdates = a.getBoolean(R.styleable.CustomSeekBarPreference_continuousUpdates, mContinuousUpdates);
+            mWriteBehindWindow = a.getInt(R.styleable.CustomSeekBarPreference_writeBehindWindow, mWriteBehindWindow);
+            mPersistInterval = a.getInt(R.styleable.CustomSeekBarPreference_persistInterval, mPersistInterval);
+            mPersistTrailing = a.getBoolean(R.styleable.CustomSeekBarPreference_persistTrailing, mPersistTrailing);
             String defaultValueText = a.getString(R.styleable.CustomSeekBarPreference_defaultValueText);
             mDefaultValueTextExists = defaultValueText != null && !defaultValueText.isEmpty();
             if (mDefaultValueTextExists) {
@@ -100,6 +112,7 @@ public class CustomSeekBarPreference extends Preference implements SeekBar.OnSee
         } else {
             mValue = mMinValue;
         }
+        mPersistedValue = mValue;
 
         mSeekBar = new SeekBar(context, attrs);
         mSeekBar.setMax(mMaxValue);
@@ -293,6 +306,19 @@ public class CustomSeekBarPreference extends Preference implements SeekBar.OnSee
             mTrackingValue = newValue;
             updateValueViews();
         } else if (mValue != newValue) {
+            if (mTrackingTouch && mPersistInterval > 0) {
+                // show every tick, but persist at most once per interval
+                mValue = newValue;
+                updateValueViews();
+                mSeekBar.removeCallbacks(mTrailingPersist);
+                long elapsed = SystemClock.uptimeMillis() - mLastPersistTime;
+                if (elapsed >= mPersistInterval) {
+                    persistValue(newValue);
+                } else if (mPersistTrailing) {
+                    mSeekBar.postDelayed(mTrailingPersist, mPersistInterval - elapsed);
+                }
+                return;
+            }
             // change rejected, revert to the previous value
             if (!callChangeListener(newValue)) {
                 mSeekBar.setProgress(getSeekValue(mValue));
@@ -301,12 +327,30 @@ public class CustomSeekBarPreference extends Preference implements SeekBar.OnSee
             // change accepted, store it
             changeValue(newValue);
             persistInt(newValue);
+            mPersistedValue = newValue;
 
             mValue = newValue;
             updateValueViews();
         }
     }
 
+    private void persistValue(int newValue) {
+        if (newValue == mPersistedValue) {
+            return;
+        }
+        // change rejected, revert to the last persisted value
+        if (!callChangeListener(newValue)) {
+            mValue = mPersistedValue;
+            mSeekBar.setProgress(getSeekValue(mValue));
+            updateValueViews();
+            return;
+        }
+        changeValue(newValue);
+        persistInt(newValue);
+        mPersistedValue = newValue;
+        mLastPersistTime = SystemClock.uptimeMillis();
+    }
+
     @Override
     public void onStartTrackingTouch(SeekBar seekBar) {
         mTrackingValue = mValue;
@@ -316,8 +360,11 @@ public class CustomSeekBarPreference extends Preference implements SeekBar.OnSee
     @Override
     public void onStopTrackingTouch(SeekBar seekBar) {
         mTrackingTouch = false;
+        mSeekBar.removeCallbacks(mTrailingPersist);
         if (!mContinuousUpdates)
             onProgressChanged(mSeekBar, getSeekValue(mTrackingValue), false);
+        else if (mPersistInterval > 0)
+            persistValue(mValue);
         notifyChanged();
     }
 
@@ -325,6 +372,7 @@ public class CustomSeekBarPreference extends Preference implements SeekBar.OnSee
     protected void onSetInitialValue(boolean restoreValue, Object defaultValue) {
         if (restoreValue)
             mValue = getPersistedInt(mValue);
+        mPersistedValue = mValue;
     }
 
     @Override
@@ -357,6 +405,7 @@ public class CustomSeekBarPreference extends Preference implements SeekBar.OnSee
 
     public void setValue(int newValue) {
         mValue = getLimitedValue(newValue);
+        mPersistedValue = mValue;
         if (mSeekBar != null) mSeekBar.setProgress(getSeekValue(mValue));
     }
 
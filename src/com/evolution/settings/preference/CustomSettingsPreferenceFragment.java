@@ -17,8 +17,10 @@
 
 package com.evolution.settings.preference;
 
+import android.content.ContentResolver;
 import android.os.Bundle;
-import android.provider.Settings;
+import android.util.ArrayMap;
+import android.util.ArraySet;
 
 import androidx.preference.Preference;
 import androidx.preference.TwoStatePreference;
@@ -26,9 +28,7 @@ import androidx.preference.TwoStatePreference;
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.settings.SettingsPreferenceFragment;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Set;
 
 public abstract class CustomSettingsPreferenceFragment extends SettingsPreferenceFragment {
@@ -43,14 +43,33 @@ public abstract class CustomSettingsPreferenceFragment extends SettingsPreferenc
     protected static final int GLOBAL_TWO_STATE = 2;
 
     /*
-     * ArrayList holds preferenceType and defaultValue
+     * Registered preferences by key, backed by the store of their namespace
      */
-    private HashMap<Preference, ArrayList<Integer>> mCustomPreferences;
+    private ArrayMap<String, CustomPreference> mCustomPreferences;
+    private SettingsStore[] mStores;
+
+    private static final class CustomPreference {
+        final Preference preference;
+        final int type;
+        final int defaultValue;
+
+        CustomPreference(Preference preference, int type, int defaultValue) {
+            this.preference = preference;
+            this.type = type;
+            this.defaultValue = defaultValue;
+        }
+    }
 
     @Override
     public void onCreate(Bundle icicle) {
         super.onCreate(icicle);
-        mCustomPreferences = new HashMap<>();
+        mCustomPreferences = new ArrayMap<>();
+        final ContentResolver resolver = getActivity().getContentResolver();
+        mStores = new SettingsStore[] {
+            new SystemSettingsStore(resolver),
+            new SecureSettingsStore(resolver),
+            new GlobalSettingsStore(resolver),
+        };
     }
 
     @Override
@@ -61,81 +80,76 @@ public abstract class CustomSettingsPreferenceFragment extends SettingsPreferenc
 
     @Override
     public boolean onPreferenceTreeClick(Preference preference) {
-        if (mCustomPreferences.containsKey(preference)) {
-            for (Preference customPreference : mCustomPreferences.keySet()) {
-                if (customPreference == preference) {
-                        return updateCustomPreference(customPreference, true);
-                }
-            }
+        final CustomPreference custom = getCustomPreferenceEntry(preference.getKey());
+        if (custom != null && custom.preference == preference) {
+            return updateCustomPreference(custom, true);
         }
         return super.onPreferenceTreeClick(preference);
     }
 
     protected void updateAllCustomPreferences() {
-        for (Preference customPreference : mCustomPreferences.keySet()) {
-            updateCustomPreference(customPreference, false);
+        // Group the reads per namespace, each is served by one settings snapshot
+        for (int type = SYSTEM_TWO_STATE; type <= GLOBAL_TWO_STATE; type++) {
+            for (int i = 0; i < mCustomPreferences.size(); i++) {
+                final CustomPreference custom = mCustomPreferences.valueAt(i);
+                if (custom.type == type) {
+                    updateCustomPreference(custom, false);
+                }
+            }
         }
     }
 
     protected boolean updateCustomPreference(Preference preference, boolean clicked) {
-        if (mCustomPreferences.containsKey(preference)) {
-            int preferenceType = mCustomPreferences.get(preference).get(0).intValue();
-            if (preferenceType == SYSTEM_TWO_STATE || preferenceType == SECURE_TWO_STATE
-                    || preferenceType == GLOBAL_TWO_STATE) {
-                updateTwoStatePreference(preference, preferenceType, clicked);
-                return true;
-            }
+        final CustomPreference custom = getCustomPreferenceEntry(preference.getKey());
+        if (custom != null && custom.preference == preference) {
+            return updateCustomPreference(custom, clicked);
         }
         return false;
     }
 
-    private void updateTwoStatePreference(Preference preference, int switchType, boolean clicked) {
-        TwoStatePreference switchPreference = (TwoStatePreference) preference;
-        int defaultValue = mCustomPreferences.get(preference).get(1).intValue();
-        boolean isEnable = false;
-        if (switchType == SYSTEM_TWO_STATE) {
-            if (clicked) {
-                Settings.System.putInt(getActivity().getContentResolver(), switchPreference.getKey(),
-                        (switchPreference.isChecked() ? STATE_ON : STATE_OFF));
-            }
-            isEnable = (Settings.System.getInt(
-                    getActivity().getContentResolver(), switchPreference.getKey(), defaultValue) == 1);
-        } else if (switchType == SECURE_TWO_STATE) {
-            if (clicked) {
-                Settings.Secure.putInt(getActivity().getContentResolver(), switchPreference.getKey(),
-                        (switchPreference.isChecked() ? STATE_ON : STATE_OFF));
-            }
-            isEnable = (Settings.Secure.getInt(
-                    getActivity().getContentResolver(), switchPreference.getKey(), defaultValue) == 1);
-        } else if (switchType == GLOBAL_TWO_STATE) {
-            if (clicked) {
-                Settings.Global.putInt(getActivity().getContentResolver(), switchPreference.getKey(),
-                        (switchPreference.isChecked() ? STATE_ON : STATE_OFF));
-            }
-            isEnable = (Settings.Global.getInt(
-                    getActivity().getContentResolver(), switchPreference.getKey(), defaultValue) == 1);
+    private boolean updateCustomPreference(CustomPreference custom, boolean clicked) {
+        if (custom.type == SYSTEM_TWO_STATE || custom.type == SECURE_TWO_STATE
+                || custom.type == GLOBAL_TWO_STATE) {
+            updateTwoStatePreference(custom, clicked);
+            return true;
+        }
+        return false;
+    }
+
+    private void updateTwoStatePreference(CustomPreference custom, boolean clicked) {
+        final TwoStatePreference switchPreference = (TwoStatePreference) custom.preference;
+        final SettingsStore store = mStores[custom.type];
+        final String key = switchPreference.getKey();
+        if (clicked) {
+            store.putInt(key, switchPreference.isChecked() ? STATE_ON : STATE_OFF);
+        }
+        final boolean isEnable = store.getInt(key, custom.defaultValue) == STATE_ON;
+        // Only rebind what actually changed
+        if (switchPreference.isChecked() != isEnable) {
+            switchPreference.setChecked(isEnable);
         }
-        switchPreference.setChecked(isEnable);
     }
 
     protected void addCustomPreference(Preference preference, int preferenceType, int defaultValue) {
-        ArrayList<Integer> prefAndDefault = new ArrayList<>();
-        prefAndDefault.add(new Integer(preferenceType));
-        prefAndDefault.add(new Integer(defaultValue));
-        mCustomPreferences.put(preference, prefAndDefault);
+        mCustomPreferences.put(preference.getKey(),
+                new CustomPreference(preference, preferenceType, defaultValue));
     }
 
     protected Set<Preference> getCustomPreferenceSet() {
-        return Collections.unmodifiableSet(mCustomPreferences.keySet());
+        final ArraySet<Preference> preferences = new ArraySet<>(mCustomPreferences.size());
+        for (int i = 0; i < mCustomPreferences.size(); i++) {
+            preferences.add(mCustomPreferences.valueAt(i).preference);
+        }
+        return Collections.unmodifiableSet(preferences);
     }
 
     protected Preference getCustomPreference(String key) {
-        for (Preference preference : mCustomPreferences.keySet()) {
-            if (preference.getKey().equals(key)) {
-                return preference;
-            }
-        }
-        return null;
+        final CustomPreference custom = getCustomPreferenceEntry(key);
+        return custom != null ? custom.preference : null;
+    }
+
+    private CustomPreference getCustomPreferenceEntry(String key) {
+        return key != null ? mCustomPreferences.get(key) : null;
     }
 
     @Override
@@ -24,16 +24,16 @@ public class CustomSystemSeekBarPreference extends CustomSeekBarPreference {
 
     public CustomSystemSeekBarPreference(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
-        setPreferenceDataStore(new SystemSettingsStore(context.getContentResolver()));
+        setPreferenceDataStore(new SystemSettingsStore(context, mWriteBehindWindow));
     }
 
     public CustomSystemSeekBarPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
-        setPreferenceDataStore(new SystemSettingsStore(context.getContentResolver()));
+        setPreferenceDataStore(new SystemSettingsStore(context, mWriteBehindWindow));
     }
 
     public CustomSystemSeekBarPreference(Context context) {
         super(context, null);
-        setPreferenceDataStore(new SystemSettingsStore(context.getContentResolver()));
+        setPreferenceDataStore(new SystemSettingsStore(context, mWriteBehindWindow));
     }
 }
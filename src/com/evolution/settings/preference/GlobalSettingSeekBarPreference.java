@@ -23,16 +23,16 @@ public class GlobalSettingSeekBarPreference extends CustomSeekBarPreference {
 
     public GlobalSettingSeekBarPreference(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
-        setPreferenceDataStore(new GlobalSettingsStore(context.getContentResolver()));
+        setPreferenceDataStore(new GlobalSettingsStore(context, mWriteBehindWindow));
     }
 
     public GlobalSettingSeekBarPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
-        setPreferenceDataStore(new GlobalSettingsStore(context.getContentResolver()));
+        setPreferenceDataStore(new GlobalSettingsStore(context, mWriteBehindWindow));
     }
 
     public GlobalSettingSeekBarPreference(Context context) {
         super(context, null);
-        setPreferenceDataStore(new GlobalSettingsStore(context.getContentResolver()));
+        setPreferenceDataStore(new GlobalSettingsStore(context, mWriteBehindWindow));
     }
 }
@@ -17,57 +17,43 @@
 package com.evolution.settings.preference;
 
 import android.content.ContentResolver;
-import android.preference.PreferenceDataStore;
+import android.content.Context;
+import android.net.Uri;
+import android.os.UserHandle;
 import android.provider.Settings;
 
-public class GlobalSettingsStore extends androidx.preference.PreferenceDataStore
-        implements PreferenceDataStore {
-
-    private ContentResolver mContentResolver;
+public class GlobalSettingsStore extends SettingsStore {
 
     public GlobalSettingsStore(ContentResolver contentResolver) {
-        mContentResolver = contentResolver;
-    }
-
-    public boolean getBoolean(String key, boolean defValue) {
-        return getInt(key, defValue ? 1 : 0) != 0;
-    }
-
-    public float getFloat(String key, float defValue) {
-        return Settings.Global.getFloat(mContentResolver, key, defValue);
-    }
-
-    public int getInt(String key, int defValue) {
-        return Settings.Global.getInt(mContentResolver, key, defValue);
-    }
-
-    public long getLong(String key, long defValue) {
-        return Settings.Global.getLong(mContentResolver, key, defValue);
+        super(contentResolver);
     }
 
-    public String getString(String key, String defValue) {
-        String result = Settings.Global.getString(mContentResolver, key);
-        return result == null ? defValue : result;
+    /**
+     * Creates a store whose writes are coalesced within the given window and
+     * flushed off the main thread, see {@link SettingsWriteBatcher}.
+     */
+    public GlobalSettingsStore(Context context, long writeBehindMs) {
+        super(context, writeBehindMs);
     }
 
-    public void putBoolean(String key, boolean value) {
-        putInt(key, value ? 1 : 0);
+    @Override
+    protected Uri getContentUri() {
+        return Settings.Global.CONTENT_URI;
     }
 
-    public void putFloat(String key, float value) {
-        Settings.Global.putFloat(mContentResolver, key, value);
+    @Override
+    protected int getUserId() {
+        // Global settings are shared by all users
+        return UserHandle.USER_SYSTEM;
     }
 
-    public void putInt(String key, int value) {
-        Settings.Global.putInt(mContentResolver, key, value);
+    @Override
+    protected String readString(String key) {
+        return Settings.Global.getString(mContentResolver, key);
     }
 
-    public void putLong(String key, long value) {
-        Settings.Global.putLong(mContentResolver, key, value);
-    }
-
-    public void putString(String key, String value) {
+    @Override
+    protected void writeString(String key, String value) {
         Settings.Global.putString(mContentResolver, key, value);
     }
-
 }
@@ -18,14 +18,6 @@
 package com.evolution.settings.preference;
 
 import android.content.Context;
-import android.content.Intent;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
-import android.graphics.drawable.Drawable;
-import android.os.Handler;
-import android.os.Looper;
-import android.os.Message;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -36,50 +28,28 @@ import android.widget.TextView;
 
 import com.android.settings.R;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
-public class PackageListAdapter extends BaseAdapter implements Runnable {
-    private final PackageManager mPm;
+public class PackageListAdapter extends BaseAdapter implements AppCatalog.Listener {
     private final LayoutInflater mInflater;
-    private final List<PackageItem> mInstalledPackages = new LinkedList<>();
+    private final AppIconLoader mIconLoader;
+    private final ArrayList<PackageItem> mInstalledPackages = new ArrayList<>();
+    private List<PackageItem> mCatalog = Collections.emptyList();
     private Set<String> mExcludedPackages = new HashSet<>();
 
-    // Packages which don't have launcher icons, but which we want to show nevertheless
-    private static final String[] PACKAGE_WHITELIST = new String[] {
-        "android",                          /* system server */
-        "com.android.systemui",             /* system UI */
-        "com.android.providers.downloads"   /* download provider */
-    };
-
-    private final Handler mHandler = new Handler(Looper.getMainLooper()) {
-        @Override
-        public void handleMessage(Message msg) {
-            PackageItem item = (PackageItem) msg.obj;
-            int index = Collections.binarySearch(mInstalledPackages, item);
-            if (index < 0) {
-                mInstalledPackages.add(-index - 1, item);
-            } else {
-                mInstalledPackages.get(index).activityTitles.addAll(item.activityTitles);
-            }
-            notifyDataSetChanged();
-        }
-    };
-
     public static class PackageItem implements Comparable<PackageItem> {
         public final String packageName;
         public final CharSequence title;
-        private final TreeSet<CharSequence> activityTitles = new TreeSet<>();
-        public final Drawable icon;
+        final TreeSet<CharSequence> activityTitles = new TreeSet<>();
 
-        PackageItem(String packageName, CharSequence title, Drawable icon) {
+        PackageItem(String packageName, CharSequence title) {
             this.packageName = packageName;
             this.title = title;
-            this.icon = icon;
         }
 
         @Override
@@ -90,31 +60,30 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
     }
 
     public PackageListAdapter(Context context) {
-        mPm = context.getPackageManager();
         mInflater = LayoutInflater.from(context);
-        reloadList();
+        mIconLoader = AppIconLoader.get(context);
+        AppCatalog.get(context).addListener(this);
     }
 
     @Override
     public int getCount() {
-        synchronized (mInstalledPackages) {
-            return mInstalledPackages.size();
-        }
+        return mInstalledPackages.size();
     }
 
     @Override
     public PackageItem getItem(int position) {
-        synchronized (mInstalledPackages) {
-            return mInstalledPackages.get(position);
-        }
+        return mInstalledPackages.get(position);
     }
 
     @Override
     public long getItemId(int position) {
-        synchronized (mInstalledPackages) {
-            // packageName is guaranteed to be unique in mInstalledPackages
-            return mInstalledPackages.get(position).packageName.hashCode();
-        }
+        // packageName is guaranteed to be unique in mInstalledPackages
+        return mInstalledPackages.get(position).packageName.hashCode();
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
     }
 
     @Override
@@ -133,7 +102,7 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
 
         PackageItem applicationInfo = getItem(position);
         holder.title.setText(applicationInfo.title);
-        holder.icon.setImageDrawable(applicationInfo.icon);
+        mIconLoader.loadInto(holder.icon, applicationInfo.packageName);
 
         boolean needSummary = applicationInfo.activityTitles.size() > 0;
         if (applicationInfo.activityTitles.size() == 1) {
@@ -152,47 +121,26 @@ public class PackageListAdapter extends BaseAdapter implements Runnable {
         return convertView;
     }
 
-    private void reloadList() {
-        mInstalledPackages.clear();
-        new Thread(this).start();
-    }
-
     @Override
-    public void run() {
-        final Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
-        mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
-        List<ResolveInfo> installedAppsInfo = mPm.queryIntentActivities(mainIntent, 0);
-
-        for (ResolveInfo info : installedAppsInfo) {
-            ApplicationInfo appInfo = info.activityInfo.applicationInfo;
-            if (mExcludedPackages.contains(appInfo.packageName)) {
-                continue;
-            }
-
-            final PackageItem item = new PackageItem(appInfo.packageName,
-                    appInfo.loadLabel(mPm), appInfo.loadIcon(mPm));
-            item.activityTitles.add(info.loadLabel(mPm));
-            mHandler.obtainMessage(0, item).sendToTarget();
-        }
-
-        for (String packageName : PACKAGE_WHITELIST) {
-            if (mExcludedPackages.contains(packageName)) {
-                continue;
-            }
-            try {
-                ApplicationInfo appInfo = mPm.getApplicationInfo(packageName, 0);
-                final PackageItem item = new PackageItem(appInfo.packageName,
-                        appInfo.loadLabel(mPm), appInfo.loadIcon(mPm));
-                mHandler.obtainMessage(0, item).sendToTarget();
-            } catch (PackageManager.NameNotFoundException ignored) {
-                // package not present, so nothing to add -> ignore it
-            }
-        }
+    public void onAppCatalogChanged(List<PackageItem> apps) {
+        mCatalog = apps;
+        applyExclusions();
     }
 
     public void setExcludedPackages(HashSet<String> packages) {
         mExcludedPackages = packages;
-        reloadList();
+        applyExclusions();
+    }
+
+    private void applyExclusions() {
+        mInstalledPackages.clear();
+        mInstalledPackages.ensureCapacity(mCatalog.size());
+        for (PackageItem item : mCatalog) {
+            if (!mExcludedPackages.contains(item.packageName)) {
+                mInstalledPackages.add(item);
+            }
+        }
+        notifyDataSetChanged();
     }
 
     private static class ViewHolder {
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.preference;
+
+import static android.content.ContentProvider.maybeAddUserId;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.Settings;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+
+/**
+ * Read-through snapshot of one settings namespace for one user.
+ *
+ * The first read loads the whole namespace with a single provider query and
+ * later reads are served from memory, including keys that are not set at all.
+ * One ContentObserver per namespace and user marks changed keys dirty so they
+ * are read through again on next access.
+ */
+public class SettingsSnapshotCache {
+
+    private static final String TAG = "SettingsSnapshotCache";
+
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    private static final String[] PROJECTION = {
+            Settings.NameValueTable.NAME, Settings.NameValueTable.VALUE };
+
+    public interface Reader {
+        String readString(String key);
+    }
+
+    private static final ArrayMap<Uri, SettingsSnapshotCache> sCaches = new ArrayMap<>();
+
+    private final Uri mUri;
+    private final int mUserId;
+
+    // Keys the framework redirects to another namespace, never in our table
+    private final ArraySet<String> mMovedKeys = new ArraySet<>();
+
+    // Guarded by "this"
+    private ArrayMap<String, String> mValues;
+    private final ArraySet<String> mDirty = new ArraySet<>();
+    private boolean mBulkLoadFailed;
+    private int mGeneration;
+
+    private final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            invalidate(uri);
+        }
+    };
+
+    private SettingsSnapshotCache(Uri uri, int userId) {
+        mUri = uri;
+        mUserId = userId;
+        if (Settings.System.CONTENT_URI.equals(uri)) {
+            Settings.System.getMovedToSecureSettings(mMovedKeys);
+            Settings.System.getMovedToGlobalSettings(mMovedKeys);
+        } else if (Settings.Secure.CONTENT_URI.equals(uri)) {
+            Settings.Secure.getMovedToGlobalSettings(mMovedKeys);
+        }
+    }
+
+    /**
+     * Returns the shared snapshot of the namespace at uri for the given user.
+     */
+    public static SettingsSnapshotCache get(ContentResolver resolver, Uri uri, int userId) {
+        final Uri userUri = maybeAddUserId(uri, userId);
+        synchronized (sCaches) {
+            SettingsSnapshotCache cache = sCaches.get(userUri);
+            if (cache == null) {
+                cache = new SettingsSnapshotCache(uri, userId);
+                resolver.registerContentObserver(uri, true, cache.mObserver, userId);
+                sCaches.put(userUri, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Returns the value of key, loading the snapshot on first use. Keys that
+     * changed since the snapshot was taken are read through the given reader.
+     */
+    public String getString(ContentResolver resolver, String key, Reader reader) {
+        final int generation;
+        synchronized (this) {
+            if (mValues == null && !mBulkLoadFailed) {
+                load(resolver);
+            }
+            if (mValues != null && !mDirty.contains(key) && !mMovedKeys.contains(key)) {
+                return mValues.get(key);
+            }
+            generation = mGeneration;
+        }
+        final String value = reader.readString(key);
+        synchronized (this) {
+            // Only trust the value if nothing changed while we were reading it
+            if (mValues != null && generation == mGeneration && mDirty.remove(key)) {
+                putLocked(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Records a value we just wrote, so it is served before the observer fires.
+     */
+    public synchronized void update(String key, String value) {
+        if (mValues != null && !mDirty.contains(key)) {
+            putLocked(key, value);
+        }
+    }
+
+    private void putLocked(String key, String value) {
+        if (value == null) {
+            mValues.remove(key);
+        } else {
+            mValues.put(key, value);
+        }
+    }
+
+    private synchronized void invalidate(Uri uri) {
+        mGeneration++;
+        if (uri == null || mUri.equals(uri)) {
+            mValues = null;
+            mDirty.clear();
+            mBulkLoadFailed = false;
+        } else if (mValues != null) {
+            mDirty.add(uri.getLastPathSegment());
+        }
+    }
+
+    private void load(ContentResolver resolver) {
+        final ArrayMap<String, String> values = new ArrayMap<>();
+        try (Cursor c = resolver.query(maybeAddUserId(mUri, mUserId), PROJECTION,
+                null, null, null)) {
+            if (c == null) {
+                mBulkLoadFailed = true;
+                return;
+            }
+            values.ensureCapacity(c.getCount());
+            while (c.moveToNext()) {
+                values.put(c.getString(0), c.getString(1));
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to load " + mUri + ", reading through", e);
+            mBulkLoadFailed = true;
+            return;
+        }
+        mValues = values;
+        mDirty.clear();
+        if (DEBUG) Log.d(TAG, "loaded " + values.size() + " values from " + mUri
+                + " for user " + mUserId);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.preference;
+
+import android.app.ActivityManager;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.preference.PreferenceDataStore;
+
+/**
+ * Common base of the Settings.System/Secure/Global backed data stores.
+ *
+ * Values go through the namespace as strings, the same way the typed
+ * Settings helpers store them. Reads are served from the shared
+ * {@link SettingsSnapshotCache} of the namespace. When created with a
+ * write-behind window the puts are coalesced by a {@link SettingsWriteBatcher}
+ * and reads see the pending values.
+ */
+public abstract class SettingsStore extends androidx.preference.PreferenceDataStore
+        implements PreferenceDataStore {
+
+    protected final ContentResolver mContentResolver;
+
+    private final SettingsWriteBatcher mBatcher;
+
+    private SettingsSnapshotCache mSnapshot;
+
+    protected SettingsStore(ContentResolver contentResolver) {
+        mContentResolver = contentResolver;
+        mBatcher = null;
+    }
+
+    protected SettingsStore(Context context, long writeBehindMs) {
+        mContentResolver = context.getContentResolver();
+        if (writeBehindMs > 0) {
+            mBatcher = new SettingsWriteBatcher(this::commit, writeBehindMs);
+            SettingsWriteBatcher.bindTo(context);
+        } else {
+            mBatcher = null;
+        }
+    }
+
+    protected abstract Uri getContentUri();
+
+    protected abstract String readString(String key);
+
+    protected abstract void writeString(String key, String value);
+
+    /**
+     * Returns the user whose values this store reads and writes.
+     */
+    protected int getUserId() {
+        return ActivityManager.getCurrentUser();
+    }
+
+    /**
+     * Returns the write-behind batcher, or null if writes go straight through.
+     */
+    public SettingsWriteBatcher getWriteBatcher() {
+        return mBatcher;
+    }
+
+    public boolean getBoolean(String key, boolean defValue) {
+        return getInt(key, defValue ? 1 : 0) != 0;
+    }
+
+    public float getFloat(String key, float defValue) {
+        String value = read(key);
+        try {
+            return value != null ? Float.parseFloat(value) : defValue;
+        } catch (NumberFormatException e) {
+            return defValue;
+        }
+    }
+
+    public int getInt(String key, int defValue) {
+        String value = read(key);
+        try {
+            return value != null ? Integer.parseInt(value) : defValue;
+        } catch (NumberFormatException e) {
+            return defValue;
+        }
+    }
+
+    public long getLong(String key, long defValue) {
+        String value = read(key);
+        try {
+            return value != null ? Long.parseLong(value) : defValue;
+        } catch (NumberFormatException e) {
+            return defValue;
+        }
+    }
+
+    public String getString(String key, String defValue) {
+        String result = read(key);
+        return result == null ? defValue : result;
+    }
+
+    public void putBoolean(String key, boolean value) {
+        putInt(key, value ? 1 : 0);
+    }
+
+    public void putFloat(String key, float value) {
+        write(key, Float.toString(value));
+    }
+
+    public void putInt(String key, int value) {
+        write(key, Integer.toString(value));
+    }
+
+    public void putLong(String key, long value) {
+        write(key, Long.toString(value));
+    }
+
+    public void putString(String key, String value) {
+        write(key, value);
+    }
+
+    private String read(String key) {
+        if (mBatcher != null) {
+            String pending = mBatcher.getPending(key);
+            if (pending != null) {
+                return pending;
+            }
+        }
+        return getSnapshot().getString(mContentResolver, key, this::readString);
+    }
+
+    private void write(String key, String value) {
+        // Deletions are rare and must not be shadowed by an older pending value
+        if (mBatcher != null && value != null) {
+            mBatcher.put(key, value);
+        } else {
+            if (mBatcher != null) {
+                mBatcher.flush();
+            }
+            commit(key, value);
+        }
+    }
+
+    private void commit(String key, String value) {
+        writeString(key, value);
+        getSnapshot().update(key, value);
+    }
+
+    private SettingsSnapshotCache getSnapshot() {
+        // Lookups are idempotent, so racing the batcher thread here is harmless
+        if (mSnapshot == null) {
+            mSnapshot = SettingsSnapshotCache.get(mContentResolver, getContentUri(), getUserId());
+        }
+        return mSnapshot;
+    }
+}
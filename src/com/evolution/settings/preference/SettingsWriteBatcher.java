@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.preference;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Write-behind buffer for a settings namespace.
+ *
+ * Every put inside the window replaces the pending value of its key, and the
+ * whole batch is written on a background thread once the window expires.
+ * Pending writes of every batcher are flushed synchronously when a bound
+ * activity pauses or stops, so nothing is left behind when the user leaves.
+ */
+public class SettingsWriteBatcher {
+
+    private static final String TAG = "SettingsWriteBatcher";
+
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    public interface Writer {
+        void putString(String key, String value);
+    }
+
+    private static final Set<SettingsWriteBatcher> sBatchers =
+            Collections.newSetFromMap(new WeakHashMap<>());
+
+    private static final Set<Lifecycle> sBoundLifecycles =
+            Collections.newSetFromMap(new WeakHashMap<>());
+
+    private static final DefaultLifecycleObserver sFlushObserver =
+            new DefaultLifecycleObserver() {
+        @Override
+        public void onPause(@NonNull LifecycleOwner owner) {
+            flushAll();
+        }
+
+        @Override
+        public void onStop(@NonNull LifecycleOwner owner) {
+            flushAll();
+        }
+    };
+
+    private static Handler sHandler;
+
+    private static long sTotalIssued;
+    private static long sTotalElided;
+
+    private final Writer mWriter;
+    private final long mWindowMs;
+
+    // Guarded by "this": values waiting for the window to expire.
+    private final ArrayMap<String, String> mPending = new ArrayMap<>();
+    // Guarded by "this": values drained from mPending but not yet written,
+    // still served to readers so they never observe a stale value.
+    private final ArrayMap<String, String> mInFlight = new ArrayMap<>();
+
+    private final Object mFlushLock = new Object();
+    private final Runnable mFlushRunnable = this::flush;
+
+    private long mIssued;
+    private long mElided;
+
+    public SettingsWriteBatcher(Writer writer, long windowMs) {
+        mWriter = writer;
+        mWindowMs = windowMs;
+        synchronized (sBatchers) {
+            sBatchers.add(this);
+        }
+    }
+
+    /**
+     * Queues a write. A value already pending for the key is replaced and
+     * counted as elided.
+     */
+    public void put(String key, String value) {
+        final boolean schedule;
+        synchronized (this) {
+            if (mPending.containsKey(key)) {
+                mPending.put(key, value);
+                mElided++;
+                synchronized (SettingsWriteBatcher.class) {
+                    sTotalElided++;
+                }
+                return;
+            }
+            schedule = mPending.isEmpty();
+            mPending.put(key, value);
+        }
+        if (schedule) {
+            getHandler().postDelayed(mFlushRunnable, mWindowMs);
+        }
+    }
+
+    /**
+     * Returns the value not yet written for the key, or null if there is none.
+     */
+    public synchronized String getPending(String key) {
+        String value = mPending.get(key);
+        return value != null ? value : mInFlight.get(key);
+    }
+
+    /**
+     * Writes all pending values on the calling thread.
+     */
+    public void flush() {
+        synchronized (mFlushLock) {
+            synchronized (this) {
+                getHandler().removeCallbacks(mFlushRunnable);
+                if (mPending.isEmpty()) {
+                    return;
+                }
+                mInFlight.putAll(mPending);
+                mPending.clear();
+            }
+            final int count = mInFlight.size();
+            for (int i = 0; i < count; i++) {
+                mWriter.putString(mInFlight.keyAt(i), mInFlight.valueAt(i));
+            }
+            synchronized (this) {
+                mInFlight.clear();
+                mIssued += count;
+            }
+            synchronized (SettingsWriteBatcher.class) {
+                sTotalIssued += count;
+            }
+            if (DEBUG) Log.d(TAG, "flushed " + count + " writes, issued=" + mIssued
+                    + " elided=" + mElided);
+        }
+    }
+
+    /** Number of provider writes made by this batcher. */
+    public synchronized long getIssuedCount() {
+        return mIssued;
+    }
+
+    /** Number of writes that were coalesced away by this batcher. */
+    public synchronized long getElidedCount() {
+        return mElided;
+    }
+
+    public static synchronized long getTotalIssuedCount() {
+        return sTotalIssued;
+    }
+
+    public static synchronized long getTotalElidedCount() {
+        return sTotalElided;
+    }
+
+    /**
+     * Flushes every live batcher on the calling thread.
+     */
+    public static void flushAll() {
+        final List<SettingsWriteBatcher> batchers;
+        synchronized (sBatchers) {
+            batchers = new ArrayList<>(sBatchers);
+        }
+        for (SettingsWriteBatcher batcher : batchers) {
+            batcher.flush();
+        }
+    }
+
+    /**
+     * Flushes all batchers when the activity hosting the context pauses or
+     * stops. Must be called on the main thread.
+     */
+    public static void bindTo(Context context) {
+        while (context instanceof ContextWrapper && !(context instanceof LifecycleOwner)) {
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        if (!(context instanceof LifecycleOwner)) {
+            Log.w(TAG, "No lifecycle to bind to, pending writes flush on their window only");
+            return;
+        }
+        final Lifecycle lifecycle = ((LifecycleOwner) context).getLifecycle();
+        synchronized (sBoundLifecycles) {
+            if (!sBoundLifecycles.add(lifecycle)) {
+                return;
+            }
+        }
+        lifecycle.addObserver(sFlushObserver);
+    }
+
+    private static synchronized Handler getHandler() {
+        if (sHandler == null) {
+            HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            sHandler = new Handler(thread.getLooper());
+        }
+        return sHandler;
+    }
+}
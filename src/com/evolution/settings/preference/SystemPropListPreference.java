@@ -24,17 +24,17 @@ public class SystemPropListPreference extends ListPreference {
 
     public SystemPropListPreference(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
-        setPreferenceDataStore(new SystemPropStore());
+        setPreferenceDataStore(new SystemPropertiesStore(SystemPropertiesStore.BOOLEAN_LITERAL));
     }
 
     public SystemPropListPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
-        setPreferenceDataStore(new SystemPropStore());
+        setPreferenceDataStore(new SystemPropertiesStore(SystemPropertiesStore.BOOLEAN_LITERAL));
     }
 
     public SystemPropListPreference(Context context) {
         super(context);
-        setPreferenceDataStore(new SystemPropStore());
+        setPreferenceDataStore(new SystemPropertiesStore(SystemPropertiesStore.BOOLEAN_LITERAL));
     }
 
     @Override
@@ -18,31 +18,100 @@ package com.evolution.settings.preference;
 
 import android.os.SystemProperties;
 import android.preference.PreferenceDataStore;
+import android.util.ArrayMap;
 
+/**
+ * System property backed data store.
+ *
+ * Values are cached process-wide after the first lookup, parsed at most once
+ * per type, and dropped whenever a property change is reported. Booleans are
+ * written as "1"/"0" or "true"/"false" depending on the encoding the store was
+ * created with.
+ */
 public class SystemPropertiesStore extends androidx.preference.PreferenceDataStore
         implements PreferenceDataStore {
 
+    /** Booleans are stored as "1" and "0". */
+    public static final int BOOLEAN_NUMERIC = 0;
+    /** Booleans are stored as "true" and "false". */
+    public static final int BOOLEAN_LITERAL = 1;
+
+    private static final int TYPE_BOOLEAN = 1;
+    private static final int TYPE_INT = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_FLOAT = 4;
+
+    // Guarded by itself
+    private static final ArrayMap<String, Entry> sCache = new ArrayMap<>();
+
+    private static boolean sCallbackRegistered;
+
+    private final int mBooleanEncoding;
+
     public SystemPropertiesStore() {
+        this(BOOLEAN_NUMERIC);
+    }
+
+    public SystemPropertiesStore(int booleanEncoding) {
+        mBooleanEncoding = booleanEncoding;
+        registerCallback();
     }
 
     public boolean getBoolean(String key, boolean defValue) {
-        return SystemProperties.getBoolean(key, defValue);
+        final Entry e = getEntry(key);
+        synchronized (e) {
+            if (e.type != TYPE_BOOLEAN) {
+                e.parse(TYPE_BOOLEAN);
+            }
+            return e.valid ? e.booleanValue : defValue;
+        }
+    }
+
+    public float getFloat(String key, float defValue) {
+        final Entry e = getEntry(key);
+        synchronized (e) {
+            if (e.type != TYPE_FLOAT) {
+                e.parse(TYPE_FLOAT);
+            }
+            return e.valid ? e.floatValue : defValue;
+        }
     }
 
     public int getInt(String key, int defValue) {
-        return SystemProperties.getInt(key, defValue);
+        final Entry e = getEntry(key);
+        synchronized (e) {
+            if (e.type != TYPE_INT) {
+                e.parse(TYPE_INT);
+            }
+            return e.valid ? (int) e.longValue : defValue;
+        }
     }
 
     public long getLong(String key, long defValue) {
-        return SystemProperties.getLong(key, defValue);
+        final Entry e = getEntry(key);
+        synchronized (e) {
+            if (e.type != TYPE_LONG) {
+                e.parse(TYPE_LONG);
+            }
+            return e.valid ? e.longValue : defValue;
+        }
     }
 
     public String getString(String key, String defValue) {
-        return SystemProperties.get(key, defValue);
+        final String value = getEntry(key).raw;
+        return value.isEmpty() ? defValue : value;
     }
 
     public void putBoolean(String key, boolean value) {
-        putString(key, value ? "1" : "0");
+        if (mBooleanEncoding == BOOLEAN_LITERAL) {
+            putString(key, value ? "true" : "false");
+        } else {
+            putString(key, value ? "1" : "0");
+        }
+    }
+
+    public void putFloat(String key, float value) {
+        putString(key, Float.toString(value));
     }
 
     public void putInt(String key, int value) {
@@ -55,6 +124,89 @@ public class SystemPropertiesStore extends androidx.preference.PreferenceDataSto
 
     public void putString(String key, String value) {
         SystemProperties.set(key, value);
+        synchronized (sCache) {
+            sCache.put(key, new Entry(value != null ? value : ""));
+        }
+    }
+
+    private static Entry getEntry(String key) {
+        synchronized (sCache) {
+            Entry e = sCache.get(key);
+            if (e == null) {
+                e = new Entry(SystemProperties.get(key));
+                sCache.put(key, e);
+            }
+            return e;
+        }
+    }
+
+    private static void registerCallback() {
+        synchronized (sCache) {
+            if (sCallbackRegistered) {
+                return;
+            }
+            sCallbackRegistered = true;
+        }
+        SystemProperties.addChangeCallback(() -> {
+            synchronized (sCache) {
+                sCache.clear();
+            }
+        });
     }
 
+    private static final class Entry {
+        final String raw;
+
+        // Guarded by "this": last parse of raw and the type it was parsed as
+        int type;
+        boolean valid;
+        boolean booleanValue;
+        long longValue;
+        float floatValue;
+
+        Entry(String raw) {
+            this.raw = raw;
+        }
+
+        void parse(int newType) {
+            type = newType;
+            valid = !raw.isEmpty();
+            if (!valid) {
+                return;
+            }
+            try {
+                switch (newType) {
+                    case TYPE_BOOLEAN:
+                        parseBoolean();
+                        break;
+                    case TYPE_INT:
+                        longValue = Integer.parseInt(raw);
+                        break;
+                    case TYPE_LONG:
+                        longValue = Long.parseLong(raw);
+                        break;
+                    case TYPE_FLOAT:
+                        floatValue = Float.parseFloat(raw);
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                valid = false;
+            }
+        }
+
+        // Same spellings SystemProperties.getBoolean accepts
+        private void parseBoolean() {
+            switch (raw) {
+                case "1": case "y": case "yes": case "on": case "true":
+                    booleanValue = true;
+                    break;
+                case "0": case "n": case "no": case "off": case "false":
+                    booleanValue = false;
+                    break;
+                default:
+                    valid = false;
+                    break;
+            }
+        }
+    }
 }
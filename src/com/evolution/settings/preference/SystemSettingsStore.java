@@ -16,57 +16,37 @@
 package com.evolution.settings.preference;
 
 import android.content.ContentResolver;
-import android.preference.PreferenceDataStore;
+import android.content.Context;
+import android.net.Uri;
 import android.os.UserHandle;
 import android.provider.Settings;
 
-public class SystemSettingsStore extends androidx.preference.PreferenceDataStore
-        implements PreferenceDataStore {
-
-    private ContentResolver mContentResolver;
+public class SystemSettingsStore extends SettingsStore {
 
     public SystemSettingsStore(ContentResolver contentResolver) {
-        mContentResolver = contentResolver;
-    }
-
-    public boolean getBoolean(String key, boolean defValue) {
-        return Settings.System.getIntForUser(mContentResolver, key, defValue ? 1 : 0, UserHandle.USER_CURRENT) != 0;
-    }
-
-    public float getFloat(String key, float defValue) {
-        return Settings.System.getFloatForUser(mContentResolver, key, defValue, UserHandle.USER_CURRENT);
-    }
-
-    public int getInt(String key, int defValue) {
-        return Settings.System.getIntForUser(mContentResolver, key, defValue, UserHandle.USER_CURRENT);
-    }
-
-    public long getLong(String key, long defValue) {
-        return Settings.System.getLongForUser(mContentResolver, key, defValue, UserHandle.USER_CURRENT);
-    }
-
-    public String getString(String key, String defValue) {
-        String result = Settings.System.getString(mContentResolver, key);
-        return result == null ? defValue : result;
-    }
-
-    public void putBoolean(String key, boolean value) {
-        putInt(key, value ? 1 : 0);
+        super(contentResolver);
     }
 
-    public void putFloat(String key, float value) {
-        Settings.System.putFloatForUser(mContentResolver, key, value, UserHandle.USER_CURRENT);
+    /**
+     * Creates a store whose writes are coalesced within the given window and
+     * flushed off the main thread, see {@link SettingsWriteBatcher}.
+     */
+    public SystemSettingsStore(Context context, long writeBehindMs) {
+        super(context, writeBehindMs);
     }
 
-    public void putInt(String key, int value) {
-        Settings.System.putIntForUser(mContentResolver, key, value, UserHandle.USER_CURRENT);
+    @Override
+    protected Uri getContentUri() {
+        return Settings.System.CONTENT_URI;
     }
 
-    public void putLong(String key, long value) {
-        Settings.System.putLongForUser(mContentResolver, key, value, UserHandle.USER_CURRENT);
+    @Override
+    protected String readString(String key) {
+        return Settings.System.getStringForUser(mContentResolver, key, UserHandle.USER_CURRENT);
     }
 
-    public void putString(String key, String value) {
-        Settings.System.putString(mContentResolver, key, value);
+    @Override
+    protected void writeString(String key, String value) {
+        Settings.System.putStringForUser(mContentResolver, key, value, UserHandle.USER_CURRENT);
     }
 }
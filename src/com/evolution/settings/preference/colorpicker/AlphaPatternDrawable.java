@@ -18,12 +18,15 @@
 package com.evolution.settings.preference.colorpicker;
 
 import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.Shader;
 import android.graphics.Bitmap.Config;
 import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
 
 /**
  * This drawable that draws a simple white and gray chess board pattern. It's
@@ -34,31 +37,30 @@ import android.graphics.drawable.Drawable;
  */
 public class AlphaPatternDrawable extends Drawable {
 
-    private int mRectangleSize = 10;
-
-    private Paint mPaint = new Paint();
-    private Paint mPaintWhite = new Paint();
-    private Paint mPaintGray = new Paint();
-
-    private int numRectanglesHorizontal;
-    private int numRectanglesVertical;
-
     /**
-     * Bitmap in which the pattern will be cached.
+     * Repeating shaders of a two by two squares tile, per square size. They
+     * are shared by every instance, so the pattern takes the same memory
+     * however many are on screen and whatever their bounds.
      */
-    private Bitmap mBitmap;
+    private static final SparseArray<BitmapShader> sShaders = new SparseArray<>();
+
+    private final Paint mPaint = new Paint();
 
     public AlphaPatternDrawable(int rectangleSize) {
-        mRectangleSize = rectangleSize;
-        mPaintWhite.setColor(0xffffffff);
-        mPaintGray.setColor(0xffcbcbcb);
+        mPaint.setShader(getShader(Math.max(1, rectangleSize)));
     }
 
     @Override
     public void draw(Canvas canvas) {
-        if (mBitmap != null) {
-            canvas.drawBitmap(mBitmap, null, getBounds(), mPaint);
+        final Rect bounds = getBounds();
+        if (bounds.isEmpty()) {
+            return;
         }
+        // Start the pattern at the top left corner, as the cached bitmap did
+        final int count = canvas.save();
+        canvas.translate(bounds.left, bounds.top);
+        canvas.drawRect(0, 0, bounds.width(), bounds.height(), mPaint);
+        canvas.restoreToCount(count);
     }
 
     @Override
@@ -76,50 +78,26 @@ public class AlphaPatternDrawable extends Drawable {
         throw new UnsupportedOperationException("ColorFilter is not supported by this drawwable.");
     }
 
-    @Override
-    protected void onBoundsChange(Rect bounds) {
-        super.onBoundsChange(bounds);
-
-        int height = bounds.height();
-        int width = bounds.width();
-
-        numRectanglesHorizontal = (int) Math.ceil((width / mRectangleSize));
-        numRectanglesVertical = (int) Math.ceil(height / mRectangleSize);
-
-        generatePatternBitmap();
-    }
-
     /**
-     * This will generate a bitmap with the pattern as big as the rectangle we
-     * were allow to draw on. We do this to cache the bitmap so we don't need
-     * to recreate it each time draw() is called since it takes a few
-     * milliseconds.
+     * Returns the shader of the pattern with squares of the given size,
+     * creating its tile the first time.
      */
-    private void generatePatternBitmap() {
-
-        if (getBounds().width() <= 0 || getBounds().height() <= 0) {
-            return;
-        }
-
-        mBitmap = Bitmap.createBitmap(getBounds().width(), getBounds().height(), Config.ARGB_8888);
-        Canvas canvas = new Canvas(mBitmap);
-
-        Rect r = new Rect();
-        boolean verticalStartWhite = true;
-        for (int i = 0; i <= numRectanglesVertical; i++) {
-            boolean isWhite = verticalStartWhite;
-            for (int j = 0; j <= numRectanglesHorizontal; j++) {
-                r.top = i * mRectangleSize;
-                r.left = j * mRectangleSize;
-                r.bottom = r.top + mRectangleSize;
-                r.right = r.left + mRectangleSize;
-
-                canvas.drawRect(r, isWhite ? mPaintWhite : mPaintGray);
-
-                isWhite = !isWhite;
-            }
-
-            verticalStartWhite = !verticalStartWhite;
+    private static synchronized BitmapShader getShader(int rectangleSize) {
+        BitmapShader shader = sShaders.get(rectangleSize);
+        if (shader == null) {
+            final Bitmap tile = Bitmap.createBitmap(rectangleSize * 2, rectangleSize * 2,
+                    Config.ARGB_8888);
+            final Canvas canvas = new Canvas(tile);
+            canvas.drawColor(0xffffffff);
+
+            final Paint gray = new Paint();
+            gray.setColor(0xffcbcbcb);
+            canvas.drawRect(rectangleSize, 0, rectangleSize * 2, rectangleSize, gray);
+            canvas.drawRect(0, rectangleSize, rectangleSize, rectangleSize * 2, gray);
+
+            shader = new BitmapShader(tile, Shader.TileMode.REPEAT, Shader.TileMode.REPEAT);
+            sShaders.put(rectangleSize, shader);
         }
+        return shader;
     }
 }
@@ -18,6 +18,8 @@
 package com.evolution.settings.preference.colorpicker;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ComposeShader;
@@ -30,7 +32,6 @@ import android.graphics.Shader;
 import android.graphics.Paint.Align;
 import android.graphics.Paint.Style;
 import android.graphics.Shader.TileMode;
-import android.os.Build;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.View;
@@ -96,9 +97,34 @@ public class ColorPickerView extends View {
 
     private Shader mValShader;
     private Shader mSatShader;
+    private Shader mSatValShader;
     private Shader mHueShader;
     private Shader mAlphaShader;
 
+    /*
+     * The sat/val panel is a fixed image for a given hue, so it is rendered
+     * once per hue into a single panel sized bitmap and drawn from there.
+     */
+    private Bitmap mSatValBitmap;
+    private Canvas mSatValCanvas;
+    private Paint mSatValBitmapPaint;
+
+    /*
+     * What the hue dependent shaders were built for, they are only rebuilt
+     * when it changes.
+     */
+    private float mSatShaderHue = Float.NaN;
+    private int mAlphaShaderColor;
+
+    /*
+     * Scratch objects reused by every frame and touch event, so dragging
+     * doesn't allocate.
+     */
+    private final float[] mHsv = new float[3];
+    private final float[] mSatVal = new float[2];
+    private final Point mTrackerPoint = new Point();
+    private final RectF mTrackerRect = new RectF();
+
     private int mAlpha = 0xff;
     private float mHue = 360f;
     private float mSat = 0f;
@@ -128,6 +154,7 @@ public class ColorPickerView extends View {
 
     private RectF mSatValRect;
     private RectF mHueRect;
+    private HueTable.Mapping mHueMapping;
     private RectF mAlphaRect;
 
     private AlphaPatternDrawable mAlphaPattern;
@@ -166,6 +193,7 @@ public class ColorPickerView extends View {
 
     private void initPaintTools() {
         mSatValPaint = new Paint();
+        mSatValBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
         mSatValTrackerPaint = new Paint();
         mHuePaint = new Paint();
         mHueTrackerPaint = new Paint();
@@ -196,18 +224,6 @@ public class ColorPickerView extends View {
         return offset * 1.5f;
     }
 
-    private int[] buildHueColorArray() {
-        int[] hue = new int[361];
-
-        int count = 0;
-        for (int i = hue.length - 1; i >= 0; i--, count++) {
-            hue[count] = Color.HSVToColor(new float[] {
-                    i, 1f, 1f
-            });
-        }
-        return hue;
-    }
-
     @Override
     protected void onDraw(Canvas canvas) {
         if (mDrawingRect.width() <= 0 || mDrawingRect.height() <= 0) {
@@ -220,9 +236,6 @@ public class ColorPickerView extends View {
 
     private void drawSatValPanel(Canvas canvas) {
         final RectF rect = mSatValRect;
-        int rgb = Color.HSVToColor(new float[] {
-                mHue, 1f, 1f
-        });
 
         if (BORDER_WIDTH_PX > 0) {
             mBorderPaint.setColor(mBorderColor);
@@ -230,21 +243,10 @@ public class ColorPickerView extends View {
                     rect.bottom + BORDER_WIDTH_PX, mBorderPaint);
         }
 
-        // On Honeycomb+ we need to use software rendering to create the shader properly
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-            setLayerType(View.LAYER_TYPE_SOFTWARE, null);
-        }
-
-        // Get the overlaying gradients ready and create the ComposeShader
-        if (mValShader == null) {
-            mValShader = new LinearGradient(rect.left, rect.top, rect.left, rect.bottom,
-                    0xffffffff, 0xff000000, TileMode.CLAMP);
+        if (mSatValBitmap == null || mSatShaderHue != mHue) {
+            renderSatValBitmap();
         }
-        mSatShader = new LinearGradient(rect.left, rect.top, rect.right, rect.top,
-                0xffffffff, rgb, TileMode.CLAMP);
-        ComposeShader mShader = new ComposeShader(mValShader, mSatShader, Mode.MULTIPLY);
-        mSatValPaint.setShader(mShader);
-        canvas.drawRect(rect, mSatValPaint);
+        canvas.drawBitmap(mSatValBitmap, null, rect, mSatValBitmapPaint);
 
         Point p = satValToPoint(mSat, mVal);
         mSatValTrackerPaint.setColor(0xff000000);
@@ -255,6 +257,28 @@ public class ColorPickerView extends View {
         canvas.drawCircle(p.x, p.y, PALETTE_CIRCLE_TRACKER_RADIUS, mSatValTrackerPaint);
     }
 
+    private void renderSatValBitmap() {
+        final int width = Math.max(1, Math.round(mSatValRect.width()));
+        final int height = Math.max(1, Math.round(mSatValRect.height()));
+        if (mSatValBitmap == null) {
+            mSatValBitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+            mSatValCanvas = new Canvas(mSatValBitmap);
+        }
+
+        // Get the overlaying gradients ready and create the ComposeShader.
+        // The bitmap canvas is a software one, which composes them properly.
+        if (mValShader == null) {
+            mValShader = new LinearGradient(0, 0, 0, height,
+                    0xffffffff, 0xff000000, TileMode.CLAMP);
+        }
+        mSatShaderHue = mHue;
+        mSatShader = new LinearGradient(0, 0, width, 0,
+                0xffffffff, hsvToColor(0xff, mHue, 1f, 1f), TileMode.CLAMP);
+        mSatValShader = new ComposeShader(mValShader, mSatShader, Mode.MULTIPLY);
+        mSatValPaint.setShader(mSatValShader);
+        mSatValCanvas.drawRect(0, 0, width, height, mSatValPaint);
+    }
+
     private void drawHuePanel(Canvas canvas) {
         final RectF rect = mHueRect;
 
@@ -269,7 +293,7 @@ public class ColorPickerView extends View {
 
         if (mHueShader == null) {
             mHueShader = new LinearGradient(rect.left, rect.top, rect.left, rect.bottom,
-                    buildHueColorArray(), null, TileMode.CLAMP);
+                    HueTable.getGradientColors(), null, TileMode.CLAMP);
             mHuePaint.setShader(mHueShader);
         }
 
@@ -279,7 +303,7 @@ public class ColorPickerView extends View {
 
         Point p = hueToPoint(mHue);
 
-        RectF r = new RectF();
+        final RectF r = mTrackerRect;
         r.left = rect.left - RECTANGLE_TRACKER_OFFSET;
         r.right = rect.right + RECTANGLE_TRACKER_OFFSET;
         r.top = p.y - rectHeight;
@@ -307,16 +331,13 @@ public class ColorPickerView extends View {
 
         mAlphaPattern.draw(canvas);
 
-        float[] hsv = new float[] {
-                mHue, mSat, mVal
-        };
-        int color = Color.HSVToColor(hsv);
-        int acolor = Color.HSVToColor(0, hsv);
-
-        mAlphaShader = new LinearGradient(rect.left, rect.top, rect.right, rect.top,
-                color, acolor, TileMode.CLAMP);
-
-        mAlphaPaint.setShader(mAlphaShader);
+        int color = hsvToColor(0xff, mHue, mSat, mVal);
+        if (mAlphaShader == null || mAlphaShaderColor != color) {
+            mAlphaShaderColor = color;
+            mAlphaShader = new LinearGradient(rect.left, rect.top, rect.right, rect.top,
+                    color, color & 0x00ffffff, TileMode.CLAMP);
+            mAlphaPaint.setShader(mAlphaShader);
+        }
 
         canvas.drawRect(rect, mAlphaPaint);
 
@@ -328,7 +349,7 @@ public class ColorPickerView extends View {
         float rectWidth = 4 * mDensity / 2;
         Point p = alphaToPoint(mAlpha);
 
-        RectF r = new RectF();
+        final RectF r = mTrackerRect;
         r.left = p.x - rectWidth;
         r.right = p.x + rectWidth;
         r.top = rect.top - RECTANGLE_TRACKER_OFFSET;
@@ -337,12 +358,25 @@ public class ColorPickerView extends View {
         canvas.drawRoundRect(r, 2, 2, mHueTrackerPaint);
     }
 
+    /**
+     * Returns the color of the given HSV components, using the scratch array.
+     */
+    private int hsvToColor(int alpha, float hue, float sat, float val) {
+        mHsv[0] = hue;
+        mHsv[1] = sat;
+        mHsv[2] = val;
+        return Color.HSVToColor(alpha, mHsv);
+    }
+
+    /*
+     * The xToPoint methods return the shared tracker point, only valid until
+     * the next call.
+     */
     private Point hueToPoint(float hue) {
         final RectF rect = mHueRect;
-        final float height = rect.height();
 
-        Point p = new Point();
-        p.y = (int) (height - (hue * height / 360f) + rect.top);
+        Point p = mTrackerPoint;
+        p.y = (int) (mHueMapping.offsetOf(hue) + rect.top);
         p.x = (int) rect.left;
         return p;
     }
@@ -353,7 +387,7 @@ public class ColorPickerView extends View {
         final float height = rect.height();
         final float width = rect.width();
 
-        Point p = new Point();
+        Point p = mTrackerPoint;
 
         p.x = (int) (sat * width + rect.left);
         p.y = (int) ((1f - val) * height + rect.top);
@@ -365,7 +399,7 @@ public class ColorPickerView extends View {
         final RectF rect = mAlphaRect;
         final float width = rect.width();
 
-        Point p = new Point();
+        Point p = mTrackerPoint;
         p.x = (int) (width - (alpha * width / 0xff) + rect.left);
         p.y = (int) rect.top;
         return p;
@@ -373,7 +407,7 @@ public class ColorPickerView extends View {
 
     private float[] pointToSatVal(float x, float y) {
         final RectF rect = mSatValRect;
-        float[] result = new float[2];
+        float[] result = mSatVal;
         float width = rect.width();
         float height = rect.height();
 
@@ -399,17 +433,7 @@ public class ColorPickerView extends View {
     }
 
     private float pointToHue(float y) {
-        final RectF rect = mHueRect;
-        float height = rect.height();
-
-        if (y < rect.top) {
-            y = 0f;
-        } else if (y > rect.bottom) {
-            y = height;
-        } else {
-            y = y - rect.top;
-        }
-        return 360f - (y * 360f / height);
+        return mHueMapping.hueAt(y - mHueRect.top);
     }
 
     private int pointToAlpha(int x) {
@@ -483,9 +507,7 @@ public class ColorPickerView extends View {
 
         if (update) {
             if (mListener != null) {
-                mListener.onColorChanged(Color.HSVToColor(mAlpha, new float[] {
-                        mHue, mSat, mVal
-                }));
+                mListener.onColorChanged(hsvToColor(mAlpha, mHue, mSat, mVal));
             }
             invalidate();
             return true;
@@ -514,9 +536,7 @@ public class ColorPickerView extends View {
         if (update) {
             requestFocus();
             if (mListener != null) {
-                mListener.onColorChanged(Color.HSVToColor(mAlpha, new float[] {
-                        mHue, mSat, mVal
-                }));
+                mListener.onColorChanged(hsvToColor(mAlpha, mHue, mSat, mVal));
             }
             invalidate();
             return true;
@@ -637,6 +657,20 @@ public class ColorPickerView extends View {
         setUpSatValRect();
         setUpHueRect();
         setUpAlphaRect();
+
+        // The shaders are laid out for the old panels
+        resetShaders();
+    }
+
+    private void resetShaders() {
+        // The last frame may still reference the old bitmap, leave it to the GC
+        mSatValBitmap = null;
+        mSatValCanvas = null;
+        mValShader = null;
+        mSatShader = null;
+        mSatValShader = null;
+        mHueShader = null;
+        mAlphaShader = null;
     }
 
     private void setUpSatValRect() {
@@ -664,6 +698,7 @@ public class ColorPickerView extends View {
         float right = dRect.right - BORDER_WIDTH_PX;
 
         mHueRect = new RectF(left, top, right, bottom);
+        mHueMapping = HueTable.getMapping(Math.round(mHueRect.height()));
     }
 
     private void setUpAlphaRect() {
@@ -717,9 +752,7 @@ public class ColorPickerView extends View {
      * @return the current color.
      */
     public int getColor() {
-        return Color.HSVToColor(mAlpha, new float[] {
-                mHue, mSat, mVal
-        });
+        return hsvToColor(mAlpha, mHue, mSat, mVal);
     }
 
     /**
@@ -752,9 +785,7 @@ public class ColorPickerView extends View {
         mVal = hsv[2];
 
         if (callback && mListener != null) {
-            mListener.onColorChanged(Color.HSVToColor(mAlpha, new float[] {
-                    mHue, mSat, mVal
-            }));
+            mListener.onColorChanged(hsvToColor(mAlpha, mHue, mSat, mVal));
         }
         invalidate();
     }
@@ -785,10 +816,7 @@ public class ColorPickerView extends View {
              * Reset all shader to force a recreation. Otherwise they will not
              * look right after the size of the view has changed.
              */
-            mValShader = null;
-            mSatShader = null;
-            mHueShader = null;
-            mAlphaShader = null;
+            resetShaders();
             requestLayout();
         }
 
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.preference.colorpicker;
+
+import android.graphics.Color;
+import android.util.SparseArray;
+
+/**
+ * Hue lookup tables shared by every color picker.
+ *
+ * The colors of the hue panel gradient are built once per process, and the
+ * mapping between hues and pixel offsets once per panel height.
+ */
+final class HueTable {
+
+    private static final int HUE_STEPS = 361;
+
+    private static int[] sGradientColors;
+
+    // Panel height in pixels to its mapping
+    private static final SparseArray<Mapping> sMappings = new SparseArray<>();
+
+    /**
+     * Hue of each pixel offset of a panel of a given height, with 360 at
+     * the top and 0 at the bottom.
+     */
+    static final class Mapping {
+        private final int mHeight;
+        private final float[] mHues;
+
+        private Mapping(int height) {
+            mHeight = height;
+            mHues = new float[height + 1];
+            for (int y = 0; y <= height; y++) {
+                mHues[y] = 360f - (y * 360f / height);
+            }
+        }
+
+        /**
+         * Returns the hue at offset y from the top of the panel, clamped to
+         * the panel.
+         */
+        float hueAt(float y) {
+            final int offset = (int) y;
+            if (offset <= 0) {
+                return mHues[0];
+            }
+            if (offset >= mHeight) {
+                return mHues[mHeight];
+            }
+            return mHues[offset];
+        }
+
+        /**
+         * Returns the offset from the top of the panel of hue.
+         */
+        int offsetOf(float hue) {
+            return (int) (mHeight - (hue * mHeight / 360f));
+        }
+    }
+
+    private HueTable() {
+    }
+
+    /**
+     * Returns the colors of the hue gradient, from hue 360 down to 0. The
+     * array is shared and must not be modified.
+     */
+    static synchronized int[] getGradientColors() {
+        if (sGradientColors == null) {
+            final int[] colors = new int[HUE_STEPS];
+            final float[] hsv = { 0f, 1f, 1f };
+            for (int i = 0; i < HUE_STEPS; i++) {
+                hsv[0] = HUE_STEPS - 1 - i;
+                colors[i] = Color.HSVToColor(hsv);
+            }
+            sGradientColors = colors;
+        }
+        return sGradientColors;
+    }
+
+    /**
+     * Returns the hue mapping of a panel height pixels tall.
+     */
+    static synchronized Mapping getMapping(int height) {
+        height = Math.max(1, height);
+        Mapping mapping = sMappings.get(height);
+        if (mapping == null) {
+            mapping = new Mapping(height);
+            sMappings.put(height, mapping);
+        }
+        return mapping;
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.utils;
+
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.View;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Plays an animation-list drawable once as the background of a view, decoding
+ * its frames on demand instead of inflating them all up front.
+ *
+ * Only the next few frames are decoded ahead, into bitmaps reused from a
+ * small pool, so memory stays constant whatever the frame count. Playback
+ * stops and the bitmaps are recycled when the view is detached.
+ */
+public class FrameSequencePlayer implements View.OnAttachStateChangeListener {
+
+    private static final String TAG = "FrameSequencePlayer";
+
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+
+    // Frames decoded ahead of the one shown
+    private static final int PREFETCH_FRAMES = 3;
+
+    // Released bitmaps kept for reuse, enough to cover the prefetch window
+    private static final int MAX_POOLED = PREFETCH_FRAMES + 1;
+
+    private static final int DEFAULT_DURATION = 16;
+
+    // Shared by every player, so previews never decode concurrently
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    private final View mView;
+    private final Resources mResources;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // Guarded by "this", oldest first so a bitmap just taken off screen is
+    // the last one to be decoded into again
+    private final ArrayDeque<Bitmap> mPool = new ArrayDeque<>();
+
+    // Only touched on the main thread
+    private final ArrayDeque<Bitmap> mReady = new ArrayDeque<>();
+    private int[] mFrameIds;
+    private int[] mDurations;
+    private int mGeneration;
+    private int mNextDecode;
+    private int mDecoding;
+    private int mNextShow;
+    private Bitmap mShown;
+    // Taken off screen, but RenderThread may draw it until the next frame
+    private Bitmap mRetired;
+    private boolean mWaiting;
+    private int mSampleSize = 1;
+
+    private final Runnable mAdvance = this::showNextFrame;
+    private final Runnable mReleaseRetired = this::releaseRetired;
+
+    public FrameSequencePlayer(View view, Resources resources) {
+        mView = view;
+        mResources = resources;
+        view.addOnAttachStateChangeListener(this);
+    }
+
+    /**
+     * Starts playing the animation-list animationId, stopping whatever was
+     * playing. Returns false if it isn't an animation-list of drawable
+     * references, which callers should play some other way. Main thread only.
+     */
+    public boolean start(int animationId) {
+        stop();
+        if (!parse(animationId)) {
+            return false;
+        }
+        mSampleSize = computeSampleSize(mFrameIds[0]);
+        if (DEBUG) Log.d(TAG, "playing " + mFrameIds.length + " frames, sample size "
+                + mSampleSize);
+        mWaiting = true;
+        prefetch();
+        return true;
+    }
+
+    /**
+     * Stops playing, clears the background and recycles every bitmap.
+     * Main thread only.
+     */
+    public void stop() {
+        mGeneration++;
+        mHandler.removeCallbacks(mAdvance);
+        mView.removeCallbacks(mReleaseRetired);
+        if (mRetired != null) {
+            mRetired.recycle();
+            mRetired = null;
+        }
+        if (mFrameIds == null && mShown == null) {
+            return;
+        }
+        mFrameIds = null;
+        mDurations = null;
+        mView.setBackground(null);
+        if (mShown != null) {
+            mShown.recycle();
+            mShown = null;
+        }
+        for (Bitmap bitmap : mReady) {
+            bitmap.recycle();
+        }
+        mReady.clear();
+        drainPool();
+    }
+
+    @Override
+    public void onViewAttachedToWindow(View v) {
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(View v) {
+        stop();
+    }
+
+    private boolean parse(int animationId) {
+        final ArrayList<int[]> frames = new ArrayList<>();
+        try (XmlResourceParser parser = mResources.getXml(animationId)) {
+            int type;
+            while ((type = parser.next()) != XmlPullParser.START_TAG
+                    && type != XmlPullParser.END_DOCUMENT) {
+                // Skip to the root
+            }
+            if (type != XmlPullParser.START_TAG
+                    || !"animation-list".equals(parser.getName())) {
+                return false;
+            }
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (type != XmlPullParser.START_TAG || !"item".equals(parser.getName())) {
+                    continue;
+                }
+                final int id = parser.getAttributeResourceValue(ANDROID_NS, "drawable", 0);
+                if (id == 0) {
+                    // Inline frame drawables need the full inflation
+                    return false;
+                }
+                frames.add(new int[] { id,
+                        parser.getAttributeIntValue(ANDROID_NS, "duration", DEFAULT_DURATION) });
+            }
+        } catch (Resources.NotFoundException | XmlPullParserException | IOException e) {
+            if (DEBUG) Log.d(TAG, "Unable to parse animation " + animationId, e);
+            return false;
+        }
+        if (frames.isEmpty()) {
+            return false;
+        }
+        mFrameIds = new int[frames.size()];
+        mDurations = new int[frames.size()];
+        for (int i = 0; i < frames.size(); i++) {
+            mFrameIds[i] = frames.get(i)[0];
+            mDurations[i] = frames.get(i)[1];
+        }
+        mNextDecode = 0;
+        mDecoding = 0;
+        mNextShow = 0;
+        return true;
+    }
+
+    private int computeSampleSize(int frameId) {
+        final int width = mView.getWidth();
+        final int height = mView.getHeight();
+        if (width <= 0 || height <= 0) {
+            return 1;
+        }
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, frameId, options);
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width
+                && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private void prefetch() {
+        while (mNextDecode < mFrameIds.length && mDecoding + mReady.size() < PREFETCH_FRAMES) {
+            final int generation = mGeneration;
+            final int frameId = mFrameIds[mNextDecode++];
+            final int sampleSize = mSampleSize;
+            mDecoding++;
+            sExecutor.execute(() -> {
+                final Bitmap bitmap = decode(frameId, sampleSize);
+                mHandler.post(() -> onFrameDecoded(generation, bitmap));
+            });
+        }
+    }
+
+    private void onFrameDecoded(int generation, Bitmap bitmap) {
+        if (generation != mGeneration) {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+            return;
+        }
+        mDecoding--;
+        if (bitmap == null) {
+            stop();
+            return;
+        }
+        mReady.add(bitmap);
+        if (mWaiting) {
+            showNextFrame();
+        }
+    }
+
+    private void showNextFrame() {
+        if (mFrameIds == null) {
+            return;
+        }
+        final Bitmap next = mReady.poll();
+        if (next == null) {
+            // Decoding fell behind, show it as soon as it's ready
+            mWaiting = true;
+            return;
+        }
+        mWaiting = false;
+        mView.setBackground(new BitmapDrawable(mResources, next));
+        if (mShown != null) {
+            if (mRetired != null) {
+                // No frame was drawn since the last one, so this one never
+                // reached RenderThread
+                release(mShown);
+            } else {
+                // Decoding into it now could tear the frame being drawn, pool
+                // it once the next frame has started
+                mRetired = mShown;
+                mView.postOnAnimation(mReleaseRetired);
+            }
+        }
+        mShown = next;
+        final int duration = mDurations[mNextShow++];
+        if (mNextShow < mFrameIds.length) {
+            mHandler.postDelayed(mAdvance, duration);
+            prefetch();
+        } else {
+            finish();
+        }
+    }
+
+    private void releaseRetired() {
+        if (mRetired == null) {
+            return;
+        }
+        if (mFrameIds != null) {
+            release(mRetired);
+        } else {
+            // Finished, the pool was drained
+            mRetired.recycle();
+        }
+        mRetired = null;
+    }
+
+    private void finish() {
+        // One shot, the last frame stays shown and only the spares go
+        mFrameIds = null;
+        mDurations = null;
+        drainPool();
+    }
+
+    private Bitmap decode(int frameId, int sampleSize) {
+        final Bitmap reuse = obtain();
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true;
+        options.inSampleSize = sampleSize;
+        options.inBitmap = reuse;
+        try {
+            Bitmap bitmap;
+            try {
+                bitmap = BitmapFactory.decodeResource(mResources, frameId, options);
+            } catch (IllegalArgumentException e) {
+                // The pooled bitmap is too small for this frame
+                options.inBitmap = null;
+                bitmap = BitmapFactory.decodeResource(mResources, frameId, options);
+            }
+            if (bitmap == null) {
+                // Not an image, draw the drawable instead
+                bitmap = render(mResources.getDrawable(frameId, null), sampleSize,
+                        options.inBitmap);
+            }
+            if (reuse != null && bitmap != reuse) {
+                reuse.recycle();
+            }
+            return bitmap;
+        } catch (Resources.NotFoundException | OutOfMemoryError e) {
+            Log.w(TAG, "Unable to decode frame " + frameId, e);
+            if (reuse != null) {
+                reuse.recycle();
+            }
+            return null;
+        }
+    }
+
+    private static Bitmap render(Drawable drawable, int sampleSize, Bitmap reuse) {
+        final int width = Math.max(1, drawable.getIntrinsicWidth() / sampleSize);
+        final int height = Math.max(1, drawable.getIntrinsicHeight() / sampleSize);
+        Bitmap bitmap = reuse;
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } else {
+            bitmap.eraseColor(0);
+        }
+        drawable.setBounds(0, 0, width, height);
+        drawable.draw(new Canvas(bitmap));
+        return bitmap;
+    }
+
+    private synchronized Bitmap obtain() {
+        return mPool.poll();
+    }
+
+    private synchronized void release(Bitmap bitmap) {
+        if (mPool.size() < MAX_POOLED && bitmap.isMutable()) {
+            mPool.add(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+    }
+
+    private synchronized void drainPool() {
+        for (Bitmap bitmap : mPool) {
+            bitmap.recycle();
+        }
+        mPool.clear();
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Application labels of packages, shared by the pickers and app lists.
+ *
+ * Labels are loaded once per package and locale. A package broadcast evicts
+ * the labels of its package, which covers every versionCode change, and a
+ * locale change drops them all.
+ */
+public class LabelCache {
+
+    private static final String TAG = "LabelCache";
+
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    private static LabelCache sInstance;
+
+    private final Context mContext;
+    private final PackageManager mPm;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    // Guarded by "this": "locale/pkg" to label
+    private final ArrayMap<String, String> mLabels = new ArrayMap<>();
+
+    // Guarded by "this": bumped whenever labels are dropped
+    private int mGeneration;
+
+    private final BroadcastReceiver mLocaleReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            synchronized (LabelCache.this) {
+                mGeneration++;
+                mLabels.clear();
+            }
+        }
+    };
+
+    private LabelCache(Context context) {
+        mContext = context;
+        mPm = context.getPackageManager();
+
+        PackageChangeMonitor.get(context).addPackageListener((pkg, intent) -> invalidate(pkg));
+        context.registerReceiver(mLocaleReceiver,
+                new IntentFilter(Intent.ACTION_LOCALE_CHANGED), Context.RECEIVER_NOT_EXPORTED);
+    }
+
+    public static synchronized LabelCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new LabelCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the label of pkg, or pkg itself if it isn't installed.
+     */
+    public String getLabel(String pkg) {
+        final String key = getKey(pkg);
+        final int generation;
+        synchronized (this) {
+            final String label = mLabels.get(key);
+            if (label != null) {
+                return label;
+            }
+            generation = mGeneration;
+        }
+        String label;
+        try {
+            label = mPm.getApplicationInfo(pkg, 0).loadLabel(mPm).toString();
+        } catch (PackageManager.NameNotFoundException e) {
+            if (DEBUG) Log.d(TAG, pkg + " is not installed");
+            label = pkg;
+        }
+        put(key, label, generation);
+        return label;
+    }
+
+    /**
+     * Returns the label of the application described by info.
+     */
+    public String getLabel(ApplicationInfo info) {
+        final String key = getKey(info.packageName);
+        final int generation;
+        synchronized (this) {
+            final String label = mLabels.get(key);
+            if (label != null) {
+                return label;
+            }
+            generation = mGeneration;
+        }
+        final String label = info.loadLabel(mPm).toString();
+        put(key, label, generation);
+        return label;
+    }
+
+    /**
+     * Loads the labels of pkgs that aren't cached yet in the background.
+     */
+    public void preload(List<String> pkgs) {
+        final List<String> copy = new ArrayList<>(pkgs);
+        mExecutor.execute(() -> {
+            for (String pkg : copy) {
+                getLabel(pkg);
+            }
+            if (DEBUG) Log.d(TAG, "preloaded " + copy.size() + " labels");
+        });
+    }
+
+    /**
+     * Drops the labels of pkg, for callers reacting to the same package
+     * broadcast before this cache sees it.
+     */
+    public synchronized void invalidate(String pkg) {
+        mGeneration++;
+        final String suffix = "/" + pkg;
+        for (int i = mLabels.size() - 1; i >= 0; i--) {
+            if (mLabels.keyAt(i).endsWith(suffix)) {
+                mLabels.removeAt(i);
+            }
+        }
+    }
+
+    private synchronized void put(String key, String label, int generation) {
+        // Dropped while we were loading it, the label may be stale
+        if (generation == mGeneration) {
+            mLabels.put(key, label);
+        }
+    }
+
+    private String getKey(String pkg) {
+        return mContext.getResources().getConfiguration().getLocales().get(0).toLanguageTag()
+                + "/" + pkg;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.utils;
+
+import android.content.Context;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import com.android.internal.util.evolution.ThemeUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Overlay packages of each theme category, shared by the theme pickers.
+ *
+ * The Themes screen prefetches every category its pickers show in parallel,
+ * along with the enabled overlay of each, so opening a picker lays out its
+ * first frame from memory. A lookup made while the same list is still being
+ * prefetched waits for that load instead of querying OverlayManager again.
+ * Lists are kept until a package is installed, changed or removed.
+ */
+public class OverlayCatalog {
+
+    private static final String TAG = "OverlayCatalog";
+
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    private static final int PREFETCH_THREADS = 4;
+
+    private static OverlayCatalog sInstance;
+
+    private final Context mContext;
+    private final ThemeUtils mThemeUtils;
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(PREFETCH_THREADS);
+
+    // Guarded by "this": "category/target" to the load of its packages, as
+    // listed and sorted. A load is dropped from here as soon as a package
+    // changes, callers already waiting on it still get its result.
+    private final ArrayMap<String, FutureTask<List<String>[]>> mLoads = new ArrayMap<>();
+
+    private OverlayCatalog(Context context) {
+        mContext = context;
+        mThemeUtils = new ThemeUtils(context);
+
+        // Any package may be an overlay of any category
+        PackageChangeMonitor.get(context).addPackageListener((pkg, intent) -> invalidate());
+    }
+
+    public static synchronized OverlayCatalog get(Context context) {
+        if (sInstance == null) {
+            sInstance = new OverlayCatalog(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Loads the packages and the enabled overlay of each { category, target }
+     * pair in the background, skipping the ones already loaded or loading.
+     */
+    public void prefetch(String[][] categories) {
+        for (String[] entry : categories) {
+            final String category = entry[0];
+            final String target = entry[1];
+            final FutureTask<List<String>[]> task = newLoad(category, target);
+            if (task == null) {
+                continue;
+            }
+            mExecutor.execute(() -> {
+                task.run();
+                OverlayStateCache.get(mContext).getEnabledPackage(category, target);
+            });
+        }
+    }
+
+    /**
+     * Returns a copy of the overlay packages of the category for target, in
+     * the order OverlayManager lists them.
+     */
+    public List<String> getPackages(String category, String target) {
+        return new ArrayList<>(getLoad(category, target)[0]);
+    }
+
+    /**
+     * Returns a copy of the overlay packages of the category for target,
+     * sorted by package name.
+     */
+    public List<String> getSortedPackages(String category, String target) {
+        return new ArrayList<>(getLoad(category, target)[1]);
+    }
+
+    /**
+     * Drops every list, the next lookups query OverlayManager again.
+     */
+    public synchronized void invalidate() {
+        mLoads.clear();
+    }
+
+    /**
+     * Returns the packages of the category for target, loading them on the
+     * calling thread unless a load of them is already done or in flight, in
+     * which case its result is shared.
+     */
+    private List<String>[] getLoad(String category, String target) {
+        final String key = getKey(category, target);
+        FutureTask<List<String>[]> task;
+        final boolean owner;
+        synchronized (this) {
+            task = mLoads.get(key);
+            owner = task == null;
+            if (owner) {
+                task = new FutureTask<>(() -> load(category, target));
+                mLoads.put(key, task);
+            }
+        }
+        if (owner) {
+            task.run();
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            synchronized (this) {
+                // Let the next lookup try again
+                if (mLoads.get(key) == task) {
+                    mLoads.remove(key);
+                }
+            }
+            throw new IllegalStateException("Failed to load overlays of " + category,
+                    e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Registers a load of the category for target and returns it, to be run
+     * by the caller, or returns null if one is already registered.
+     */
+    private synchronized FutureTask<List<String>[]> newLoad(String category, String target) {
+        final String key = getKey(category, target);
+        if (mLoads.containsKey(key)) {
+            return null;
+        }
+        final FutureTask<List<String>[]> task = new FutureTask<>(() -> load(category, target));
+        mLoads.put(key, task);
+        return task;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String>[] load(String category, String target) {
+        final List<String> pkgs = Collections.unmodifiableList(
+                new ArrayList<>(mThemeUtils.getOverlayPackagesForCategory(category, target)));
+        final ArrayList<String> sorted = new ArrayList<>(pkgs);
+        Collections.sort(sorted);
+        final List<String> sortedPkgs = Collections.unmodifiableList(sorted);
+        if (DEBUG) Log.d(TAG, "loaded " + pkgs.size() + " packages of "
+                + getKey(category, target));
+        return new List[] { pkgs, sortedPkgs };
+    }
+
+    private static String getKey(String category, String target) {
+        return category + "/" + target;
+    }
+}
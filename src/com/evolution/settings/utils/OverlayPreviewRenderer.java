@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.utils;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.View;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Renders the preview images of the theme pickers off the UI thread.
+ *
+ * Each preview is drawn once into a bitmap of the cell size and kept in a
+ * memory LRU bounded by bytes. Rendered previews are also saved as PNGs in
+ * the app cache, keyed by the version and update time of the package the
+ * drawable comes from, night mode and density, so reopening a picker doesn't
+ * load resources from the overlay APKs again.
+ */
+public class OverlayPreviewRenderer {
+
+    private static final String TAG = "OverlayPreviewRenderer";
+
+    private static final String CACHE_DIR = "overlay_previews";
+
+    private static final int MAX_MEMORY_BYTES = 4 * 1024 * 1024;
+
+    // What follows the version in a cache entry name: configuration,
+    // preview name and size
+    private static final String ENTRY = "n\\d+d\\d+_\\w+_\\d+\\.png";
+
+    /**
+     * Creates the drawable of a preview. Called on a background thread.
+     */
+    public interface Source {
+        Drawable load();
+    }
+
+    private static OverlayPreviewRenderer sInstance;
+
+    private final PackageManager mPm;
+    private final Resources mResources;
+    private final VersionedDiskCache mDiskCache;
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(2);
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final LruCache<String, Bitmap> mMemoryCache;
+
+    // Only touched on the main thread
+    private final ArrayMap<String, ArrayList<View>> mPending = new ArrayMap<>();
+    private final WeakHashMap<View, String> mBindings = new WeakHashMap<>();
+
+    private OverlayPreviewRenderer(Context context) {
+        mPm = context.getPackageManager();
+        mResources = context.getResources();
+        mDiskCache = new VersionedDiskCache(context, CACHE_DIR, ENTRY);
+
+        final int maxBytes = (int) Math.min(MAX_MEMORY_BYTES, Runtime.getRuntime().maxMemory() / 32);
+        mMemoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+
+        // The disk entries are keyed by version and go stale by themselves
+        PackageChangeMonitor.get(context).addPackageListener((pkg, intent) -> evict(pkg));
+    }
+
+    public static synchronized OverlayPreviewRenderer get(Context context) {
+        if (sInstance == null) {
+            sInstance = new OverlayPreviewRenderer(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Sets the preview called name of pkg, rendered at size pixels, as the
+     * background of view, replacing any preview the view was bound to before.
+     * The source is only used when the preview is in neither cache. Main
+     * thread only.
+     */
+    public void loadInto(View view, String pkg, String name, int size, Source source) {
+        loadInto(view, pkg, pkg, name, size, source);
+    }
+
+    /**
+     * Like {@link #loadInto(View, String, String, int, Source)}, for a
+     * preview of pkg whose drawable source loads from sourcePkg instead.
+     * The cached preview follows the version of sourcePkg.
+     */
+    public void loadInto(View view, String pkg, String sourcePkg, String name, int size,
+            Source source) {
+        final String config = getConfigKey();
+        final String key = sourcePkg + "/" + pkg + "/" + config + "/" + name + "/" + size;
+        mBindings.put(view, key);
+
+        final Bitmap cached = mMemoryCache.get(key);
+        if (cached != null) {
+            view.setBackground(new BitmapDrawable(mResources, cached));
+            return;
+        }
+        // Don't leave the preview of a recycled cell showing meanwhile
+        view.setBackground(null);
+
+        ArrayList<View> views = mPending.get(key);
+        if (views != null) {
+            views.add(view);
+            return;
+        }
+        views = new ArrayList<>();
+        views.add(view);
+        mPending.put(key, views);
+
+        mExecutor.execute(() -> {
+            final Bitmap preview = render(pkg, sourcePkg, config, name, size, source);
+            mHandler.post(() -> {
+                final ArrayList<View> waiting = mPending.remove(key);
+                if (preview == null || waiting == null) {
+                    return;
+                }
+                mMemoryCache.put(key, preview);
+                for (View v : waiting) {
+                    if (key.equals(mBindings.get(v))) {
+                        v.setBackground(new BitmapDrawable(mResources, preview));
+                    }
+                }
+            });
+        });
+    }
+
+    private Bitmap render(String pkg, String sourcePkg, String config, String name, int size,
+            Source source) {
+        String version = null;
+        try {
+            version = VersionedDiskCache.getVersion(mPm.getPackageInfo(sourcePkg, 0));
+        } catch (PackageManager.NameNotFoundException e) {
+            // Render it anyway, just don't persist it
+        }
+
+        final File file = version != null
+                ? mDiskCache.getFile(pkg, version, config + "_" + name + "_" + size + ".png")
+                : null;
+        if (file != null) {
+            Bitmap preview = BitmapFactory.decodeFile(file.getPath());
+            if (preview != null) {
+                return preview;
+            }
+        }
+
+        final Drawable drawable;
+        try {
+            drawable = source.load();
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to load " + name + " from " + pkg, e);
+            return null;
+        }
+        if (drawable == null) {
+            return null;
+        }
+        final Bitmap preview = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        drawable.setBounds(0, 0, size, size);
+        drawable.draw(new Canvas(preview));
+
+        if (file != null) {
+            mDiskCache.prepareWrite(pkg, version);
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                preview.compress(Bitmap.CompressFormat.PNG, 100, out);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to cache " + name + " of " + pkg, e);
+            }
+        }
+        return preview;
+    }
+
+    /**
+     * Returns what the overlay resources of a preview depend on besides the
+     * package: the night mode and the density.
+     */
+    private String getConfigKey() {
+        final Configuration config = mResources.getConfiguration();
+        return "n" + (config.uiMode & Configuration.UI_MODE_NIGHT_MASK)
+                + "d" + config.densityDpi;
+    }
+
+    private void evict(String sourcePkg) {
+        final String prefix = sourcePkg + "/";
+        for (String key : mMemoryCache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                mMemoryCache.remove(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.utils;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Process-wide pool of the Resources of overlay and resource packages.
+ *
+ * Creating the Resources of a package sets up a new AssetManager, so callers
+ * lease them from here instead and close the lease when done. A package keeps
+ * a single Resources, shared by every lease, with its name to identifier
+ * lookups memoized. Released packages stay pooled, least recently used first
+ * out, until a package broadcast or an overlay change is reported for them.
+ */
+public class OverlayResourcesPool {
+
+    private static final String TAG = "OverlayResourcesPool";
+
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    private static final String SYSTEM_PACKAGE = "android";
+
+    // Released packages kept around for the next lease
+    private static final int MAX_IDLE = 16;
+
+    private static OverlayResourcesPool sInstance;
+
+    private final PackageManager mPm;
+
+    // Guarded by "this", in access order for the idle trimming
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Entry mSystemEntry;
+
+    // Guarded by "this", bumped on every eviction so a Resources created
+    // meanwhile isn't pooled
+    private int mGeneration;
+
+    /**
+     * A lease on the Resources of a package, close it to return it to the pool.
+     */
+    public static final class Handle implements AutoCloseable {
+        private final OverlayResourcesPool mPool;
+        private final Entry mEntry;
+        private boolean mClosed;
+
+        private Handle(OverlayResourcesPool pool, Entry entry) {
+            mPool = pool;
+            mEntry = entry;
+        }
+
+        public Resources getResources() {
+            return mEntry.resources;
+        }
+
+        public String getPackageName() {
+            return mEntry.packageName;
+        }
+
+        /**
+         * Returns the identifier of the resource name of the given type in
+         * the leased package, or 0 if there is none.
+         */
+        public int getIdentifier(String name, String type) {
+            return mEntry.getIdentifier(name, type);
+        }
+
+        @Override
+        public void close() {
+            synchronized (mPool) {
+                if (mClosed) {
+                    return;
+                }
+                mClosed = true;
+                mPool.releaseLocked(mEntry);
+            }
+        }
+    }
+
+    private static final class Entry {
+        final String packageName;
+        final long versionCode;
+        final Resources resources;
+        // Guarded by "this": "type/name" to resource id, including misses
+        final ArrayMap<String, Integer> ids = new ArrayMap<>();
+        int refCount;
+
+        Entry(String packageName, long versionCode, Resources resources) {
+            this.packageName = packageName;
+            this.versionCode = versionCode;
+            this.resources = resources;
+        }
+
+        synchronized int getIdentifier(String name, String type) {
+            final String key = type + "/" + name;
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = resources.getIdentifier(name, type, packageName);
+                ids.put(key, id);
+            }
+            return id;
+        }
+    }
+
+    private OverlayResourcesPool(Context context) {
+        mPm = context.getPackageManager();
+        mSystemEntry = new Entry(SYSTEM_PACKAGE, 0, Resources.getSystem());
+
+        final PackageChangeMonitor monitor = PackageChangeMonitor.get(context);
+        monitor.addPackageListener((pkg, intent) -> evict(pkg));
+        // The Resources of a target no longer match the overlays applied
+        monitor.addOverlayListener((pkg, intent) -> evict(pkg));
+    }
+
+    public static synchronized OverlayResourcesPool get(Context context) {
+        if (sInstance == null) {
+            sInstance = new OverlayResourcesPool(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Leases the Resources of pkg. The system package is served by the
+     * system Resources, the same way the pickers always loaded it.
+     */
+    public Handle acquire(String pkg) throws PackageManager.NameNotFoundException {
+        if (SYSTEM_PACKAGE.equals(pkg)) {
+            return new Handle(this, mSystemEntry);
+        }
+        final int generation;
+        synchronized (this) {
+            final Entry entry = mEntries.get(pkg);
+            if (entry != null) {
+                entry.refCount++;
+                return new Handle(this, entry);
+            }
+            generation = mGeneration;
+        }
+
+        final PackageInfo info = mPm.getPackageInfo(pkg, 0);
+        final ApplicationInfo appInfo = info.applicationInfo;
+        final Entry created = new Entry(pkg, info.getLongVersionCode(),
+                mPm.getResourcesForApplication(appInfo));
+        if (DEBUG) Log.d(TAG, "created resources of " + pkg + " v" + created.versionCode);
+
+        synchronized (this) {
+            Entry entry = mEntries.get(pkg);
+            if (generation != mGeneration) {
+                // The package may have changed while we were creating it,
+                // lease it once but don't pool it
+                entry = created;
+            } else if (entry == null) {
+                entry = created;
+                mEntries.put(pkg, entry);
+                trimLocked();
+            }
+            // Otherwise another thread won the race, share its Resources
+            entry.refCount++;
+            return new Handle(this, entry);
+        }
+    }
+
+    private void releaseLocked(Entry entry) {
+        if (entry == mSystemEntry) {
+            return;
+        }
+        entry.refCount--;
+        trimLocked();
+    }
+
+    private void trimLocked() {
+        int idle = 0;
+        for (Entry entry : mEntries.values()) {
+            if (entry.refCount == 0) {
+                idle++;
+            }
+        }
+        // Least recently used first
+        final Iterator<Entry> it = mEntries.values().iterator();
+        while (idle > MAX_IDLE && it.hasNext()) {
+            if (it.next().refCount == 0) {
+                it.remove();
+                idle--;
+            }
+        }
+    }
+
+    private synchronized void evict(String pkg) {
+        mGeneration++;
+        // Outstanding leases keep using the old Resources until closed
+        final Entry entry = mEntries.remove(pkg);
+        if (DEBUG && entry != null) Log.d(TAG, "evicted " + pkg + " v" + entry.versionCode);
+    }
+}
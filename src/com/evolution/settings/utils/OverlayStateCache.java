@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.utils;
+
+import android.content.Context;
+import android.content.om.OverlayInfo;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import com.android.internal.util.evolution.ThemeUtils;
+
+import java.util.List;
+
+/**
+ * Enabled overlay of each theme category, shared by the theme pickers.
+ *
+ * Each category and target pair is queried from OverlayManager once and the
+ * result is kept until an overlay changes, so binding a picker cell is an
+ * in-memory lookup instead of a binder call.
+ */
+public class OverlayStateCache {
+
+    private static final String TAG = "OverlayStateCache";
+
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    private static OverlayStateCache sInstance;
+
+    private final ThemeUtils mThemeUtils;
+
+    // Guarded by "this": "category/target" to the enabled overlay package
+    private final ArrayMap<String, String> mEnabled = new ArrayMap<>();
+
+    private int mGeneration;
+    private long mHits;
+    private long mMisses;
+
+    private OverlayStateCache(Context context) {
+        mThemeUtils = new ThemeUtils(context);
+
+        PackageChangeMonitor.get(context).addOverlayListener((pkg, intent) -> invalidate());
+    }
+
+    public static synchronized OverlayStateCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new OverlayStateCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the enabled overlay of the category for target, or target
+     * itself when the category uses the stock resources.
+     */
+    public String getEnabledPackage(String category, String target) {
+        final String key = category + "/" + target;
+        final int generation;
+        synchronized (this) {
+            final String enabled = mEnabled.get(key);
+            if (enabled != null) {
+                mHits++;
+                return enabled;
+            }
+            mMisses++;
+            generation = mGeneration;
+        }
+
+        String enabled = target;
+        final List<OverlayInfo> infos = mThemeUtils.getOverlayInfos(category, target);
+        for (OverlayInfo info : infos) {
+            if (info.isEnabled()) {
+                enabled = info.packageName;
+                break;
+            }
+        }
+        if (DEBUG) Log.d(TAG, "queried " + key + ": " + enabled);
+
+        synchronized (this) {
+            // An overlay changed while we were querying, don't keep the result
+            if (generation == mGeneration) {
+                mEnabled.put(key, enabled);
+            }
+        }
+        return enabled;
+    }
+
+    /**
+     * Returns whether pkg is the applied choice of the category for target.
+     */
+    public boolean isApplied(String category, String target, String pkg) {
+        return pkg.equals(getEnabledPackage(category, target));
+    }
+
+    /**
+     * Drops every cached category, the next lookups query OverlayManager again.
+     */
+    public synchronized void invalidate() {
+        mGeneration++;
+        mEnabled.clear();
+        if (DEBUG) Log.d(TAG, "invalidated, hits=" + mHits + " misses=" + mMisses);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.utils;
+
+import static android.os.UserHandle.USER_SYSTEM;
+
+import android.content.Context;
+import android.content.om.OverlayIdentifier;
+import android.content.om.OverlayInfo;
+import android.content.om.OverlayManager;
+import android.content.om.OverlayManagerTransaction;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import com.android.internal.util.evolution.ThemeUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies every overlay change of one theme pick at once.
+ *
+ * Operations have the same meaning as {@link ThemeUtils#setOverlayEnabled}
+ * and are collected into a single OverlayManagerTransaction, committed on a
+ * background thread, so a pick causes one reconfiguration of the target
+ * instead of one per overlay. Transactions are applied one at a time, in the
+ * order they were submitted.
+ */
+public class OverlayTransaction {
+
+    private static final String TAG = "OverlayTransaction";
+
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    public interface Callback {
+        void onOverlaysApplied(boolean success);
+    }
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+    private static final AtomicInteger sInFlight = new AtomicInteger();
+
+    private final Context mContext;
+    private final ThemeUtils mThemeUtils;
+    private final ArrayList<String[]> mOps = new ArrayList<>();
+
+    public OverlayTransaction(Context context, ThemeUtils themeUtils) {
+        mContext = context.getApplicationContext();
+        mThemeUtils = themeUtils;
+    }
+
+    /**
+     * Adds enabling pkg exclusively in category for target. Passing target
+     * itself as pkg disables the category instead.
+     */
+    public OverlayTransaction setOverlayEnabled(String category, String pkg, String target) {
+        mOps.add(new String[] { category, pkg, target });
+        return this;
+    }
+
+    /**
+     * Returns whether a transaction is waiting or being applied. Pickers
+     * ignore new picks meanwhile.
+     */
+    public static boolean isApplying() {
+        return sInFlight.get() > 0;
+    }
+
+    /**
+     * Applies the transaction in the background and reports the result to
+     * callback, if any, on the main thread.
+     */
+    public void apply(Callback callback) {
+        sInFlight.incrementAndGet();
+        sExecutor.execute(() -> {
+            boolean success = false;
+            try {
+                success = commit();
+            } catch (RuntimeException e) {
+                // Listing the overlays or writing the settings failed, an
+                // uncaught exception here would take the whole app down
+                Log.e(TAG, "Failed to apply " + mOps.size() + " overlay operations", e);
+            } finally {
+                OverlayStateCache.get(mContext).invalidate();
+                sInFlight.decrementAndGet();
+            }
+            final boolean result = success;
+            if (callback != null) {
+                sHandler.post(() -> callback.onOverlaysApplied(result));
+            }
+        });
+    }
+
+    private boolean commit() {
+        // Later operations override earlier ones on the same overlay
+        final ArrayMap<OverlayIdentifier, Boolean> states = new ArrayMap<>();
+        for (String[] op : mOps) {
+            final String category = op[0];
+            final String pkg = op[1];
+            final String target = op[2];
+            final List<OverlayInfo> infos = mThemeUtils.getOverlayInfos(category, target);
+            for (OverlayInfo info : infos) {
+                if (info.packageName.equals(pkg)) {
+                    states.put(info.getOverlayIdentifier(), true);
+                } else if (info.isEnabled() || states.containsKey(info.getOverlayIdentifier())) {
+                    states.put(info.getOverlayIdentifier(), false);
+                }
+            }
+        }
+
+        if (!states.isEmpty()) {
+            final OverlayManagerTransaction.Builder builder =
+                    new OverlayManagerTransaction.Builder();
+            for (int i = 0; i < states.size(); i++) {
+                builder.setEnabled(states.keyAt(i), states.valueAt(i), USER_SYSTEM);
+            }
+            mContext.getSystemService(OverlayManager.class).commit(builder.build());
+        }
+        writeSettings();
+        if (DEBUG) Log.d(TAG, "committed " + states.size() + " overlay changes for "
+                + mOps.size() + " operations");
+        return true;
+    }
+
+    private void writeSettings() {
+        // Keep the theme customization record in sync, the way ThemeUtils does
+        final String json = Settings.Secure.getStringForUser(mContext.getContentResolver(),
+                Settings.Secure.THEME_CUSTOMIZATION_OVERLAY_PACKAGES, USER_SYSTEM);
+        try {
+            final JSONObject object = json == null ? new JSONObject() : new JSONObject(json);
+            for (String[] op : mOps) {
+                if (op[1].equals(op[2])) {
+                    object.remove(op[0]);
+                } else {
+                    object.put(op[0], op[1]);
+                }
+            }
+            Settings.Secure.putStringForUser(mContext.getContentResolver(),
+                    Settings.Secure.THEME_CUSTOMIZATION_OVERLAY_PACKAGES,
+                    object.toString(), USER_SYSTEM);
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to parse THEME_CUSTOMIZATION_OVERLAY_PACKAGES", e);
+        }
+    }
+}
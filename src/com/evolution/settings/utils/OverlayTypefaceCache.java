@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.utils;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.widget.TextView;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Typefaces of the font overlays, shared by the font pickers.
+ *
+ * The font family named by a string resource of each overlay package is
+ * resolved and created once, in parallel in the background, and kept until
+ * the package changes. Views show the default typeface until theirs is ready.
+ */
+public class OverlayTypefaceCache {
+
+    private static final String TAG = "OverlayTypefaceCache";
+
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    private static OverlayTypefaceCache sInstance;
+
+    private final Context mContext;
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // Only touched on the main thread: "pkg/resource" to typeface
+    private final ArrayMap<String, Typeface> mTypefaces = new ArrayMap<>();
+    private final ArrayMap<String, ArrayList<TextView>> mPending = new ArrayMap<>();
+    private final WeakHashMap<TextView, String> mBindings = new WeakHashMap<>();
+
+    private long mHits;
+    private long mMisses;
+
+    private OverlayTypefaceCache(Context context) {
+        mContext = context;
+
+        PackageChangeMonitor.get(context).addPackageListener((pkg, intent) -> evict(pkg));
+    }
+
+    public static synchronized OverlayTypefaceCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new OverlayTypefaceCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Starts loading the typefaces named by the string resource of every
+     * package that isn't cached yet. Main thread only.
+     */
+    public void preload(List<String> pkgs, String resource) {
+        for (String pkg : pkgs) {
+            final String key = pkg + "/" + resource;
+            if (!mTypefaces.containsKey(key) && !mPending.containsKey(key)) {
+                mPending.put(key, new ArrayList<>());
+                load(key, pkg, resource);
+            }
+        }
+    }
+
+    /**
+     * Sets the typeface named by the string resource of pkg on view, or the
+     * default typeface until it is loaded. Main thread only.
+     */
+    public void loadInto(TextView view, String pkg, String resource) {
+        final String key = pkg + "/" + resource;
+        mBindings.put(view, key);
+
+        final Typeface cached = mTypefaces.get(key);
+        if (cached != null) {
+            mHits++;
+            view.setTypeface(cached);
+            return;
+        }
+        mMisses++;
+        view.setTypeface(Typeface.DEFAULT);
+
+        ArrayList<TextView> views = mPending.get(key);
+        if (views != null) {
+            views.add(view);
+            return;
+        }
+        views = new ArrayList<>();
+        views.add(view);
+        mPending.put(key, views);
+        load(key, pkg, resource);
+    }
+
+    public long getHitCount() {
+        return mHits;
+    }
+
+    public long getMissCount() {
+        return mMisses;
+    }
+
+    public void dump(String prefix, PrintWriter pw) {
+        pw.println(prefix + TAG + ": typefaces=" + mTypefaces.size()
+                + " hits=" + mHits + " misses=" + mMisses);
+    }
+
+    private void evict(String pkg) {
+        final String prefix = pkg + "/";
+        for (int i = mTypefaces.size() - 1; i >= 0; i--) {
+            if (mTypefaces.keyAt(i).startsWith(prefix)) {
+                mTypefaces.removeAt(i);
+            }
+        }
+    }
+
+    private void load(String key, String pkg, String resource) {
+        mExecutor.execute(() -> {
+            final Typeface typeface = createTypeface(pkg, resource);
+            mHandler.post(() -> {
+                final ArrayList<TextView> waiting = mPending.remove(key);
+                if (waiting == null) {
+                    return;
+                }
+                mTypefaces.put(key, typeface);
+                for (TextView v : waiting) {
+                    if (key.equals(mBindings.get(v))) {
+                        v.setTypeface(typeface);
+                    }
+                }
+                if (DEBUG) Log.d(TAG, "loaded " + key + ", hits=" + mHits
+                        + " misses=" + mMisses);
+            });
+        });
+    }
+
+    private Typeface createTypeface(String pkg, String resource) {
+        try (OverlayResourcesPool.Handle res = OverlayResourcesPool.get(mContext).acquire(pkg)) {
+            return Typeface.create(res.getResources().getString(
+                    res.getIdentifier(resource, "string")), Typeface.NORMAL);
+        } catch (PackageManager.NameNotFoundException | RuntimeException e) {
+            Log.w(TAG, "Unable to load " + resource + " of " + pkg, e);
+        }
+        return Typeface.DEFAULT;
+    }
+}
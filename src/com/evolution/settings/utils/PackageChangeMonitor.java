@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide dispatcher of package and overlay broadcasts to the caches.
+ *
+ * A single receiver is registered for packages being added, changed or
+ * removed, and another one for overlays being changed, instead of one pair
+ * per cache. Listeners are kept for the life of the process, like the caches
+ * registering them.
+ */
+public class PackageChangeMonitor {
+
+    private static final String TAG = "PackageChangeMonitor";
+
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    public interface Listener {
+        /**
+         * Called on the main thread with the package intent is about, the
+         * target package for overlay changes.
+         */
+        void onPackageChanged(String pkg, Intent intent);
+    }
+
+    private static PackageChangeMonitor sInstance;
+
+    private final CopyOnWriteArrayList<Listener> mPackageListeners =
+            new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<Listener> mOverlayListeners =
+            new CopyOnWriteArrayList<>();
+
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            dispatch(mPackageListeners, intent);
+        }
+    };
+
+    private final BroadcastReceiver mOverlayReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            dispatch(mOverlayListeners, intent);
+        }
+    };
+
+    private PackageChangeMonitor(Context context) {
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        context.registerReceiver(mPackageReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
+
+        final IntentFilter overlayFilter = new IntentFilter(Intent.ACTION_OVERLAY_CHANGED);
+        overlayFilter.addDataScheme("package");
+        context.registerReceiver(mOverlayReceiver, overlayFilter, Context.RECEIVER_NOT_EXPORTED);
+    }
+
+    public static synchronized PackageChangeMonitor get(Context context) {
+        if (sInstance == null) {
+            sInstance = new PackageChangeMonitor(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Reports packages being added, changed or removed to listener.
+     */
+    public void addPackageListener(Listener listener) {
+        mPackageListeners.add(listener);
+    }
+
+    /**
+     * Reports overlays of a target package being changed to listener.
+     */
+    public void addOverlayListener(Listener listener) {
+        mOverlayListeners.add(listener);
+    }
+
+    private static void dispatch(CopyOnWriteArrayList<Listener> listeners, Intent intent) {
+        final Uri data = intent.getData();
+        if (data == null) {
+            return;
+        }
+        final String pkg = data.getSchemeSpecificPart();
+        if (DEBUG) Log.d(TAG, intent.getAction() + " " + pkg);
+        for (Listener listener : listeners) {
+            listener.onPackageChanged(pkg, intent);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.utils;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Resource IDs of the names listed by string arrays of a resource package.
+ *
+ * Resolving names with getIdentifier is slow, so the index is built once in
+ * the background and saved in the app cache, keyed by the package version,
+ * letting callers bind with resource IDs only.
+ */
+public class ResourceNameIndex {
+
+    private static final String TAG = "ResourceNameIndex";
+
+    private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+    private static final String CACHE_DIR = "resource_index";
+
+    // What follows the version in an index file name: the resource type
+    private static final String ENTRY = "[a-z]+\\.json";
+
+    public interface Callback {
+        /**
+         * Called on the main thread, with null if the package isn't
+         * installed.
+         */
+        void onIndexLoaded(ResourceNameIndex index);
+    }
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    // Array name to its entries and their resource IDs
+    private final ArrayMap<String, String[]> mNames = new ArrayMap<>();
+    private final ArrayMap<String, int[]> mIds = new ArrayMap<>();
+
+    private ResourceNameIndex() {
+    }
+
+    /**
+     * Loads the index of the entries of arrays in pkg, resolved as resources
+     * of the given type, and reports it to callback.
+     */
+    public static void load(Context context, String pkg, String type, String[] arrays,
+            Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        sExecutor.execute(() -> {
+            final ResourceNameIndex index = loadOrBuild(appContext, pkg, type, arrays);
+            sHandler.post(() -> callback.onIndexLoaded(index));
+        });
+    }
+
+    /**
+     * Returns the entries of array, or an empty array if it wasn't indexed.
+     */
+    public String[] getNames(String array) {
+        final String[] names = mNames.get(array);
+        return names != null ? names : new String[0];
+    }
+
+    /**
+     * Returns the resource IDs of the entries of array, 0 for the ones that
+     * don't exist.
+     */
+    public int[] getIds(String array) {
+        final int[] ids = mIds.get(array);
+        return ids != null ? ids : new int[0];
+    }
+
+    private static ResourceNameIndex loadOrBuild(Context context, String pkg, String type,
+            String[] arrays) {
+        final PackageInfo info;
+        try {
+            info = context.getPackageManager().getPackageInfo(pkg, 0);
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, pkg + " is not installed");
+            return null;
+        }
+
+        final String version = VersionedDiskCache.getVersion(info);
+        final VersionedDiskCache cache = new VersionedDiskCache(context, CACHE_DIR, ENTRY);
+        final File file = cache.getFile(pkg, version, type + ".json");
+
+        ResourceNameIndex index = read(file, arrays);
+        if (index != null) {
+            if (DEBUG) Log.d(TAG, "loaded " + file.getName());
+            return index;
+        }
+
+        try (OverlayResourcesPool.Handle res =
+                OverlayResourcesPool.get(context).acquire(pkg)) {
+            index = new ResourceNameIndex();
+            for (String array : arrays) {
+                final int arrayId = res.getIdentifier(array, "array");
+                final String[] names = arrayId != 0
+                        ? res.getResources().getStringArray(arrayId) : new String[0];
+                final int[] ids = new int[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    ids[i] = res.getIdentifier(names[i], type);
+                }
+                index.mNames.put(array, names);
+                index.mIds.put(array, ids);
+            }
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, pkg + " is not installed");
+            return null;
+        }
+        if (DEBUG) Log.d(TAG, "built " + file.getName());
+
+        cache.prepareWrite(pkg, version);
+        write(file, index);
+        return index;
+    }
+
+    private static ResourceNameIndex read(File file, String[] arrays) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            final JSONObject object = new JSONObject(
+                    new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            final ResourceNameIndex index = new ResourceNameIndex();
+            for (String array : arrays) {
+                final JSONObject entry = object.optJSONObject(array);
+                if (entry == null) {
+                    return null;
+                }
+                final JSONArray names = entry.getJSONArray("names");
+                final JSONArray ids = entry.getJSONArray("ids");
+                final String[] n = new String[names.length()];
+                final int[] i = new int[names.length()];
+                for (int j = 0; j < n.length; j++) {
+                    n[j] = names.getString(j);
+                    i[j] = ids.getInt(j);
+                }
+                index.mNames.put(array, n);
+                index.mIds.put(array, i);
+            }
+            return index;
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Unable to read " + file.getName(), e);
+            return null;
+        }
+    }
+
+    private static void write(File file, ResourceNameIndex index) {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            final JSONObject object = new JSONObject();
+            for (int i = 0; i < index.mNames.size(); i++) {
+                final JSONArray names = new JSONArray();
+                final JSONArray ids = new JSONArray();
+                for (String name : index.mNames.valueAt(i)) {
+                    names.put(name);
+                }
+                for (int id : index.mIds.valueAt(i)) {
+                    ids.put(id);
+                }
+                object.put(index.mNames.keyAt(i),
+                        new JSONObject().put("names", names).put("ids", ids));
+            }
+            out.write(object.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Unable to write " + file.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2019-2024 The Evolution X Project
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.evolution.settings.utils;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+
+import java.io.File;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Files derived from a package, cached in a directory of the app cache.
+ *
+ * Entries are named "pkg_version_rest", where version is the versionCode and
+ * update time of the package, since system image updates may keep the
+ * versionCode. Preparing to write an entry deletes the entries of other
+ * versions of the same package. Only names whose rest matches the pattern
+ * given by the cache are considered, so a package whose name merely starts
+ * with another one never loses its entries to it.
+ */
+public class VersionedDiskCache {
+
+    private final File mDir;
+    private final Pattern mEntry;
+
+    /**
+     * @param context any context of the app
+     * @param dirName the directory of the cache in the app cache
+     * @param restPattern what follows the version in the entry names
+     */
+    public VersionedDiskCache(Context context, String dirName, String restPattern) {
+        mDir = new File(context.getCacheDir(), dirName);
+        mEntry = Pattern.compile("(\\d+_\\d+)_" + restPattern);
+    }
+
+    /**
+     * Returns the version of the package described by info, as entries are
+     * keyed by.
+     */
+    public static String getVersion(PackageInfo info) {
+        return info.getLongVersionCode() + "_" + info.lastUpdateTime;
+    }
+
+    /**
+     * Returns the entry of pkg at version whose name ends with rest.
+     */
+    public File getFile(String pkg, String version, String rest) {
+        return new File(mDir, pkg + "_" + version + "_" + rest);
+    }
+
+    /**
+     * Creates the directory and deletes the entries of other versions of pkg,
+     * before an entry of pkg at version is written.
+     */
+    public void prepareWrite(String pkg, String version) {
+        mDir.mkdirs();
+        final String prefix = pkg + "_";
+        final File[] files = mDir.listFiles((dir, name) -> {
+            if (!name.startsWith(prefix)) {
+                return false;
+            }
+            final Matcher m = mEntry.matcher(name.substring(prefix.length()));
+            return m.matches() && !m.group(1).equals(version);
+        });
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+    }
+}